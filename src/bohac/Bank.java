@@ -2,10 +2,22 @@ package bohac;
 
 import bohac.entity.User;
 import bohac.entity.account.Account;
+import bohac.entity.account.IdempotencyIndex;
+import bohac.entity.account.LedgerExecutor;
+import bohac.entity.account.TransferEngine;
+import bohac.exchange.HttpRateProvider;
+import bohac.exchange.RateProvider;
+import bohac.exchange.SnapshotRateProvider;
+import bohac.exchange.TieredRateProvider;
 import bohac.storage.AccountList;
+import bohac.storage.Journal;
+import bohac.storage.PersistenceQueue;
+import bohac.storage.SerializationCache;
 import bohac.storage.UserList;
+import bohac.transaction.StandingOrderScheduler;
 import bohac.ui.TerminalSession;
 import bohac.util.Api;
+import bohac.util.Utils;
 
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -21,7 +33,30 @@ public class Bank {
     /**
      * Currency conversion api
      */
-    public static final Api API = new Api("https://cdn.jsdelivr.net/gh/fawazahmed0/currency-api@1");
+    public static final Api API = new Api("https://cdn.jsdelivr.net/gh/fawazahmed0/currency-api@1",
+            Configuration.RATE_API_TIMEOUT);
+    /**
+     * Exchange rates used for the conversions, see {@link Configuration#RATE_SOURCE}
+     */
+    public static final RateProvider RATES = createRateProvider();
+    /**
+     * Posts all the payments between accounts
+     */
+    public static final TransferEngine TRANSFERS = new TransferEngine(Configuration.TRANSFER_LOCK_STRIPES);
+    /**
+     * Outcomes of the payments submitted with an idempotency key
+     */
+    public static final IdempotencyIndex IDEMPOTENCY = new IdempotencyIndex(Configuration.IDEMPOTENCY_WINDOW,
+            Configuration.IDEMPOTENCY_CAPACITY);
+    /**
+     * The partitioned ledger the payments are posted by instead of {@link #TRANSFERS}, null if disabled - see
+     * {@link Configuration#LEDGER_PARTITIONS}
+     */
+    public static LedgerExecutor ledger;
+    /**
+     * Executes the standing orders of all the accounts, null until the data is loaded
+     */
+    public static StandingOrderScheduler standingOrders;
     /**
      * All users loaded from the disk
      */
@@ -30,6 +65,14 @@ public class Bank {
      * All accounts loaded from the disk
      */
     public static AccountList accounts;
+    /**
+     * The account mutation journal, null if journaling is disabled
+     */
+    public static Journal journal;
+    /**
+     * The write-behind persistence stage, null if disabled
+     */
+    public static PersistenceQueue persistence;
     /**
      * This {@code Map<UUID, Long>} keeps track of the timed out user accounts
      */
@@ -41,15 +84,12 @@ public class Bank {
      * @param args any arguments passed in from the command line
      */
     public static void main(String[] args) {
-        API.assertAvailable(3000);
+        RATES.start();
 
         // Creating an instance of TerminalSession
         TerminalSession session = TerminalSession.createSession();
 
-        // Loading in all the necessary data to memory
-        users = UserList.load(Paths.get(Configuration.DATA_ROOT, User.DATA_FOLDER).toFile());
-
-        accounts = AccountList.load(Paths.get(Configuration.DATA_ROOT, Account.DATA_FOLDER).toFile());
+        open();
 
         // Authentication workflow
         int tries = 0;
@@ -89,5 +129,65 @@ public class Bank {
                 session.userNotFound(login);
             }
         }
+
+        close();
+    }
+
+    /**
+     * Loads all the data to memory and starts the persistence and the ledger, the exchange rates have to be started
+     * already
+     */
+    public static void open() {
+        users = UserList.load(Paths.get(Configuration.DATA_ROOT, User.DATA_FOLDER).toFile());
+
+        accounts = AccountList.load(Paths.get(Configuration.DATA_ROOT, Account.DATA_FOLDER).toFile());
+
+        // Rebuilding the latest state from the journal tail and folding it into snapshots
+        if (Configuration.JOURNALING) {
+            journal = Journal.open(Paths.get(Configuration.DATA_ROOT, Configuration.JOURNAL_FOLDER));
+            accounts.replay(journal);
+        }
+        // Crediting the payments the ledger was interrupted in the middle of
+        LedgerExecutor.recover(accounts);
+        if (journal != null) accounts.checkpoint(journal);
+        if (Configuration.WRITE_BEHIND) persistence = PersistenceQueue.start(journal, () -> accounts.checkpoint(journal));
+        if (Configuration.LEDGER_PARTITIONS > 0) {
+            ledger = LedgerExecutor.start(Configuration.LEDGER_PARTITIONS, Configuration.LEDGER_QUEUE_CAPACITY,
+                    Configuration.LEDGER_BATCH_SIZE, changed -> changed.forEach(Account::save));
+        }
+        standingOrders = StandingOrderScheduler.start(accounts);
+    }
+
+    /**
+     * Finishes the pending payments and writes out everything that's left
+     */
+    public static void close() {
+        if (standingOrders != null) {
+            standingOrders.close();
+            Utils.printDebugMessage("Standing orders: " + standingOrders);
+        }
+        if (ledger != null) {
+            ledger.close();
+            Utils.printDebugMessage("Ledger: " + ledger);
+        }
+        if (persistence != null) persistence.close();
+        if (accounts != null) accounts.forEach(Account::closeHistory);
+        Utils.printDebugMessage("Idempotency: " + IDEMPOTENCY);
+        Utils.printDebugMessage(String.format("Serialization avoided %d bytes", SerializationCache.BYTES_AVOIDED.get()));
+        Utils.printDebugMessage("Exchange rates: " + RATES);
+    }
+
+    /**
+     * @return the exchange rate provider of the {@link Configuration#RATE_SOURCE}
+     */
+    private static RateProvider createRateProvider() {
+        HttpRateProvider http = new HttpRateProvider(API, Configuration.BASE_CURRENCY, Configuration.RATE_TABLE_REFRESH,
+                Configuration.RATE_CACHE_TTL, Configuration.RATE_CACHE_SIZE);
+        return switch (Configuration.RATE_SOURCE) {
+            case HTTP -> http;
+            case SNAPSHOT -> SnapshotRateProvider.load(Paths.get(Configuration.DATA_ROOT, Configuration.RATE_SNAPSHOT));
+            case TIERED -> new TieredRateProvider(
+                    SnapshotRateProvider.load(Paths.get(Configuration.DATA_ROOT, Configuration.RATE_SNAPSHOT)), http);
+        };
     }
 }
@@ -1,7 +1,11 @@
 package bohac;
 
 import bohac.entity.account.Balance;
+import bohac.exchange.RateSource;
+import bohac.storage.EntityFormat;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Currency;
@@ -27,6 +31,129 @@ public class Configuration {
      * Path to where all the language related data is stored
      */
     public static String LOCALE_ROOT = "lang";
+    /**
+     * Whether the per-entity files are spread over hash shards ({@code accounts/ab/cd/<id>.json}) instead of a single
+     * flat folder, see {@link bohac.storage.DataLayout}
+     */
+    public static boolean SHARDED_LAYOUT = true;
+    /**
+     * Whether the entity files are read and parsed on a pool of worker threads during startup
+     */
+    public static boolean PARALLEL_LOADING = true;
+    /**
+     * How many worker threads are used for loading the entity files, if {@link #PARALLEL_LOADING} is enabled
+     */
+    public static int LOADER_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Whether the JSON entity files are decoded with the streaming {@link bohac.storage.JSONPullParser} instead of
+     * being parsed into a {@link org.json.JSONObject} tree first
+     */
+    public static boolean STREAMING_PARSER = true;
+    /**
+     * The format the entity files are written in, files in any format are loaded
+     */
+    public static EntityFormat STORAGE_FORMAT = EntityFormat.BINARY;
+    /**
+     * Whether account mutations are appended to the write-ahead journal instead of rewriting the whole account file
+     */
+    public static boolean JOURNALING = true;
+    /**
+     * Name of the folder inside {@link #DATA_ROOT} that holds the journal segments
+     */
+    public static String JOURNAL_FOLDER = "journal";
+    /**
+     * Size in bytes after which the journal starts a new segment
+     */
+    public static long JOURNAL_SEGMENT_SIZE = 1024 * 1024;
+    /**
+     * How many journal segments can pile up before they are folded into snapshots
+     */
+    public static int JOURNAL_CHECKPOINT_SEGMENTS = 4;
+    /**
+     * Whether the transaction history of each account is kept in a binary segment file instead of the account file
+     */
+    public static boolean TRANSACTION_SEGMENTS = true;
+    /**
+     * Whether saved entities are written to the disk in batches on a background thread
+     */
+    public static boolean WRITE_BEHIND = true;
+    /**
+     * How long can a saved entity wait in the write-behind queue at most
+     */
+    public static Duration WRITE_BEHIND_INTERVAL = Duration.of(200, ChronoUnit.MILLIS);
+    /**
+     * How many queued entities trigger a write-behind batch right away
+     */
+    public static int WRITE_BEHIND_BATCH_SIZE = 64;
+    /**
+     * Where the exchange rates come from
+     */
+    public static RateSource RATE_SOURCE = RateSource.TIERED;
+    /**
+     * Name of the file inside {@link #DATA_ROOT} holding the last fetched exchange rates
+     */
+    public static String RATE_SNAPSHOT = "rates.json";
+    /**
+     * Connection and read timeout of the conversion API requests in millis
+     */
+    public static int RATE_API_TIMEOUT = 5000;
+    /**
+     * How often is the table of the exchange rates against the {@link #BASE_CURRENCY} fetched again
+     */
+    public static Duration RATE_TABLE_REFRESH = Duration.of(1, ChronoUnit.HOURS);
+    /**
+     * How long is a single loaded exchange rate used before it's loaded again
+     */
+    public static Duration RATE_CACHE_TTL = Duration.of(10, ChronoUnit.MINUTES);
+    /**
+     * How many currency pairs are kept in the single exchange rate cache at most
+     */
+    public static int RATE_CACHE_SIZE = 256;
+    /**
+     * From how many elements on are the sorts run in parallel
+     */
+    public static int PARALLEL_SORT_THRESHOLD = 8192;
+    /**
+     * How many transactions are shown per page of the transaction history
+     */
+    public static int TRANSACTION_PAGE_SIZE = 20;
+    /**
+     * How many accounts are shown in the richest accounts listing
+     */
+    public static int RICHEST_ACCOUNTS = 10;
+    /**
+     * How many locks the payments between accounts are spread over, see {@link bohac.entity.account.TransferEngine}
+     */
+    public static int TRANSFER_LOCK_STRIPES = 64;
+    /**
+     * Over how many single-writer partitions are the payments posted, see {@link bohac.entity.account.LedgerExecutor},
+     * 0 to post them under the locks of the {@link bohac.entity.account.TransferEngine}
+     */
+    public static int LEDGER_PARTITIONS = 0;
+    /**
+     * How many payments a ledger partition takes in at most
+     */
+    public static int LEDGER_QUEUE_CAPACITY = 1024;
+    /**
+     * How many messages a ledger partition handles and persists at once
+     */
+    public static int LEDGER_BATCH_SIZE = 256;
+    /**
+     * How long is an idempotency key of a payment remembered, see {@link bohac.entity.account.IdempotencyIndex}
+     */
+    public static Duration IDEMPOTENCY_WINDOW = Duration.of(24, ChronoUnit.HOURS);
+    /**
+     * How many idempotency keys of the payments are remembered at most
+     */
+    public static int IDEMPOTENCY_CAPACITY = 100_000;
+    /**
+     * How often are the due standing orders looked for, also the resolution of their schedule
+     */
+    public static Duration STANDING_ORDER_TICK = Duration.of(1, ChronoUnit.SECONDS);
+    /**
+     * How many due standing orders are executed per tick at most, the rest waits for the next ticks
+     */
+    public static int STANDING_ORDER_BATCH_SIZE = 256;
     /**
      * How many times can a user enter a wrong password before they are put on timeout
      */
@@ -44,10 +171,15 @@ public class Configuration {
      */
     public static final Locale DEFAULT_LANGUAGE = Locale.getDefault();
 
+    /**
+     * How money amounts are rounded to the minor unit of their currency, i.e. after a currency conversion
+     */
+    public static final RoundingMode MONEY_ROUNDING = RoundingMode.HALF_EVEN;
+
     /**
      * How much is a user charged for making a transaction
      */
-    public static final Balance TRANSACTION_FEE = new Balance(Currency.getInstance("CZK"), 10);
+    public static final Balance TRANSACTION_FEE = Balance.of(Currency.getInstance("CZK"), BigDecimal.TEN);
 
     /**
      * The base currency - used for sorting, etc..
@@ -1,10 +1,16 @@
 package bohac.auditlog;
 
+import bohac.auditlog.events.*;
 import bohac.entity.User;
+import bohac.storage.JSONPullParser;
 import bohac.storage.JSONSerializable;
+import bohac.util.Utils;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.time.LocalDateTime;
 import java.util.Comparator;
+import java.util.UUID;
 
 /**
  * Represents a single audit event
@@ -29,4 +35,52 @@ public interface AuditEvent extends Comparable<AuditEvent>, JSONSerializable {
     default int compareTo(AuditEvent o) {
         return CHRONOLOGICAL.compare(o, this);
     }
+
+    /**
+     * Loads an {@code AuditEvent} object from JSON
+     *
+     * @param object {@link AuditEvent} object
+     * @return the audit event of the matching type
+     */
+    static AuditEvent load(JSONObject object) {
+        return switch (Type.valueOf(object.getString("type"))) {
+            case ACCESS -> new AccessAuditEvent(GenericAuditEvent.load(object));
+            case CLOSURE -> new AccountClosureEvent(GenericAuditEvent.load(object));
+            case CREATION -> new AccountCreationAuditEvent(AccountCreationAuditEvent.load(object));
+            case MODIFICATION -> ModificationAuditEvent.load(object);
+        };
+    }
+
+    /**
+     * Loads an {@code AuditEvent} object straight from a JSON stream
+     *
+     * @param parser parser positioned at the start of the event object
+     * @return the audit event of the matching type
+     */
+    static AuditEvent load(JSONPullParser parser) {
+        Type type = null;
+        UUID user = null;
+        long dateTime = 0;
+        String message = null;
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "type" -> type = Type.valueOf(parser.nextString());
+                case "user" -> user = parser.nextUUID();
+                case "date_time" -> dateTime = parser.nextLong();
+                case "message" -> message = parser.nextString();
+                default -> parser.skipValue();
+            }
+        }
+        parser.endObject();
+        if (type == null) throw new JSONException("Audit event without a type");
+
+        GenericAuditEvent event = new GenericAuditEvent(user, Utils.parseEpoch(dateTime), type);
+        return switch (type) {
+            case ACCESS -> new AccessAuditEvent(event);
+            case CLOSURE -> new AccountClosureEvent(event);
+            case CREATION -> new AccountCreationAuditEvent(event);
+            case MODIFICATION -> new ModificationAuditEvent(user, event.getDateTime(), type, message);
+        };
+    }
 }
@@ -0,0 +1,135 @@
+package bohac.auditlog;
+
+import bohac.storage.DataLayout;
+import bohac.util.Utils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The audit log of a single account stored in its own append-only file (one JSON object per line). The log is only
+ * read once it's needed and is kept behind a {@link SoftReference}, so audit logs of accounts nobody looks at can be
+ * evicted under memory pressure. New events are buffered and appended to the file on {@link #flush()}.
+ */
+public class AuditLogFile {
+    /**
+     * What name is used for the data folder of the audit logs
+     */
+    public static final String DATA_FOLDER = "audit_logs";
+
+    private final UUID accountID;
+    private final List<AuditEvent> pending = new ArrayList<>();
+    private SoftReference<AccountAuditLog> cache = new SoftReference<>(null);
+
+    private AuditLogFile(UUID accountID) {
+        this.accountID = accountID;
+    }
+
+    /**
+     * @param accountID account id
+     * @return the audit log file of the given account, nothing is read until the log is needed
+     */
+    public static AuditLogFile of(UUID accountID) {
+        return new AuditLogFile(accountID);
+    }
+
+    /**
+     * @param accountID account id
+     * @return a new, empty audit log of a newly created account
+     */
+    public static AuditLogFile create(UUID accountID) {
+        AuditLogFile file = of(accountID);
+        file.cache = new SoftReference<>(new AccountAuditLog());
+        return file;
+    }
+
+    /**
+     * @return whether the audit log file exists on the disk
+     */
+    public boolean exists() {
+        return Files.exists(path());
+    }
+
+    /**
+     * @return the whole audit log, read from the disk if it isn't cached
+     */
+    public synchronized AccountAuditLog get() {
+        AccountAuditLog auditLog = cache.get();
+        if (auditLog == null) {
+            auditLog = new AccountAuditLog(new AuditEventList(read()));
+            pending.forEach(auditLog::addEvent);
+            cache = new SoftReference<>(auditLog);
+        }
+        return auditLog;
+    }
+
+    /**
+     * Adds an event to the audit log, the event is written out with the next {@link #flush()}
+     *
+     * @param event audit event
+     */
+    public synchronized void addEvent(AuditEvent event) {
+        pending.add(event);
+        AccountAuditLog auditLog = cache.get();
+        if (auditLog != null) auditLog.addEvent(event);
+    }
+
+    /**
+     * Appends all the pending events to the file
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+        Path path = path();
+        try {
+            Files.createDirectories(path.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditEvent event : pending) {
+                    writer.write(event.toJSON().toString());
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        pending.clear();
+    }
+
+    /**
+     * @return where the file is - looked up every time, the file can be moved to its shard by the migration
+     */
+    private Path path() {
+        return DataLayout.locate(DATA_FOLDER, accountID, ".jsonl");
+    }
+
+    private List<AuditEvent> read() {
+        List<AuditEvent> events = new ArrayList<>();
+        Path path = path();
+        if (!Files.exists(path)) return events;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    events.add(AuditEvent.load(new JSONObject(line)));
+                } catch (JSONException e) {
+                    Utils.printDebugMessage(String.format("Skipping a corrupted audit event in %s", path));
+                }
+            }
+        } catch (IOException e) {
+            Utils.printDebugMessage(String.format("Couldn't load file %s", path));
+        }
+        return events;
+    }
+}
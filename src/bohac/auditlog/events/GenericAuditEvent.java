@@ -4,6 +4,7 @@ import bohac.Bank;
 import bohac.auditlog.AuditEvent;
 import bohac.util.Utils;
 import bohac.entity.User;
+import bohac.storage.EntityLinker;
 import org.json.JSONObject;
 
 import java.time.LocalDateTime;
@@ -12,10 +13,12 @@ import java.time.ZoneOffset;
 import java.util.UUID;
 
 /**
- * Represents a generic event, used as a parent for many sub events
+ * Represents a generic event, used as a parent for many sub events. An event loaded from the disk only knows the id
+ * of its user, the user is resolved by {@link #link(EntityLinker, Object)} or on the first {@link #getUser()}.
  */
 public class GenericAuditEvent implements AuditEvent {
-    private final User user;
+    private final UUID userID;
+    private User user;
     private final LocalDateTime dateTime;
     private final Type type;
 
@@ -25,22 +28,56 @@ public class GenericAuditEvent implements AuditEvent {
      * @param auditEvent copy object
      */
     public GenericAuditEvent(AuditEvent auditEvent) {
-        this.user = auditEvent.getUser();
+        if (auditEvent instanceof GenericAuditEvent event) {
+            this.userID = event.userID;
+            this.user = event.user;
+        } else {
+            this.user = auditEvent.getUser();
+            this.userID = user == null ? null : user.getId();
+        }
         this.dateTime = auditEvent.getDateTime();
         this.type = auditEvent.getType();
     }
 
     public GenericAuditEvent(User user, LocalDateTime dateTime, Type type) {
+        this.userID = user == null ? null : user.getId();
         this.user = user;
         this.dateTime = dateTime;
         this.type = type;
     }
 
+    /**
+     * This constructor is used when loading data from the disk, the user is resolved later
+     */
+    public GenericAuditEvent(UUID userID, LocalDateTime dateTime, Type type) {
+        this.userID = userID;
+        this.dateTime = dateTime;
+        this.type = type;
+    }
+
     @Override
     public User getUser() {
+        if (user == null && userID != null) user = Bank.users.getByID(userID).orElse(null);
         return user;
     }
 
+    /**
+     * @return id of the user who caused this event
+     */
+    public UUID getUserID() {
+        return userID;
+    }
+
+    /**
+     * Resolves the user of this event
+     *
+     * @param users    user table
+     * @param referrer who holds this event, used in the report of dangling references
+     */
+    public void link(EntityLinker<User> users, Object referrer) {
+        if (user == null && userID != null) user = users.resolve(userID, referrer).orElse(null);
+    }
+
     @Override
     public LocalDateTime getDateTime() {
         return dateTime;
@@ -53,7 +90,7 @@ public class GenericAuditEvent implements AuditEvent {
 
     @Override
     public String toString() {
-        return String.format("[%s | %s] >> ", type.name(), user.getUsername());
+        return String.format("[%s | %s] >> ", type.name(), getUser().getUsername());
     }
 
     /**
@@ -61,7 +98,7 @@ public class GenericAuditEvent implements AuditEvent {
      */
     public static GenericAuditEvent load(JSONObject object) {
         return new GenericAuditEvent(
-                Bank.users.getByID(UUID.fromString(object.getString("user"))).orElse(null),
+                UUID.fromString(object.getString("user")),
                 Utils.parseEpoch(object.getLong("date_time")),
                 Type.valueOf(object.getString("type"))
         );
@@ -71,7 +108,7 @@ public class GenericAuditEvent implements AuditEvent {
     public JSONObject toJSON() {
         return new JSONObject()
                 .put("type", type)
-                .put("user", user.getId())
+                .put("user", userID)
                 .put("date_time", Utils.toEpoch(dateTime));
     }
 }
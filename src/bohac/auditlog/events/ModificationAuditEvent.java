@@ -1,6 +1,5 @@
 package bohac.auditlog.events;
 
-import bohac.Bank;
 import bohac.ui.TerminalSession;
 import bohac.util.Utils;
 import bohac.entity.User;
@@ -22,6 +21,14 @@ public class ModificationAuditEvent extends GenericAuditEvent {
         this.message = message;
     }
 
+    /**
+     * This constructor is used when loading data from the disk, the user is resolved later
+     */
+    public ModificationAuditEvent(UUID userID, LocalDateTime dateTime, Type type, String message) {
+        super(userID, dateTime, type);
+        this.message = message;
+    }
+
     public ModificationAuditEvent(User user, String message) {
         super(user, LocalDateTime.now(), Type.MODIFICATION);
         this.message = message;
@@ -36,7 +43,7 @@ public class ModificationAuditEvent extends GenericAuditEvent {
      */
     public static ModificationAuditEvent load(JSONObject object) {
         return new ModificationAuditEvent(
-                Bank.users.getByID(UUID.fromString(object.getString("user"))).orElse(null),
+                UUID.fromString(object.getString("user")),
                 Utils.parseEpoch(object.getLong("date_time")),
                 Type.valueOf(object.getString("type")),
                 object.getString("message")
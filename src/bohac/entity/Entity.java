@@ -1,29 +1,52 @@
 package bohac.entity;
 
+import bohac.Bank;
 import bohac.Configuration;
+import bohac.storage.BinarySerializable;
+import bohac.storage.EntityFormat;
 import bohac.storage.JSONSerializable;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 /**
  * Represents an entity, which is also serializable to JSON and will be saved to the disk during the program lifecycle
  */
-public interface Entity extends JSONSerializable {
+public interface Entity extends JSONSerializable, BinarySerializable {
     /**
-     * Saver method for any entity implementing this interface
+     * Saver method for any entity implementing this interface. If the write-behind persistence is running, the entity
+     * is only queued up and written out with the next batch.
      *
      * @param dataFolder the folder that contains all file representations of this entity
      * @param id         entity id - file name
      */
     default void save(String dataFolder, UUID id) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(Paths.get(Configuration.DATA_ROOT, dataFolder, id + ".json").toFile()))) {
-            writer.write(toJSON().toString());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        EntityFormat format = Configuration.STORAGE_FORMAT;
+        if (Bank.persistence != null) Bank.persistence.submit(format, dataFolder, id, encode(format));
+        else format.write(dataFolder, id, encode(format));
     }
+
+    /**
+     * Writes the entity to the disk right away, bypassing the write-behind persistence
+     *
+     * @param dataFolder the folder that contains all file representations of this entity
+     * @param id         entity id - file name
+     */
+    default void saveNow(String dataFolder, UUID id) {
+        EntityFormat format = Configuration.STORAGE_FORMAT;
+        format.write(dataFolder, id, encode(format));
+    }
+
+    /**
+     * @return the JSON representation of this entity, as it's written to the disk
+     */
+    default String serialize() {
+        return toJSON().toString();
+    }
+
+    /**
+     * @param format file format
+     * @return this entity encoded in the given format
+     */
+    byte[] encode(EntityFormat format);
 }
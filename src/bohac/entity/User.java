@@ -2,11 +2,16 @@ package bohac.entity;
 
 import bohac.Bank;
 import bohac.entity.account.Account;
+import bohac.storage.BinaryCodec;
+import bohac.storage.EntityFormat;
+import bohac.storage.JSONPullParser;
+import bohac.storage.SerializationCache;
 import bohac.storage.UserPreferences;
 import bohac.util.Utils;
 import org.json.JSONObject;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import java.nio.charset.StandardCharsets;
 import java.text.Collator;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -39,11 +44,24 @@ public final class User implements Entity, Comparable<User> {
     private final LocalDateTime created;
     private final UserPreferences preferences;
     private final boolean admin;
+    private String serialized;
+    /**
+     * Whether this user has been written to the disk
+     */
+    private boolean persisted;
 
     /**
      * This constructor is used, when loading data from the disk
      */
     public User(UUID id, String username, String name, String lastName, String email, String password, LocalDateTime created, JSONObject preferences, boolean admin) {
+        this(id, username, name, lastName, email, password, created,
+                preferences.has("preferences") ? UserPreferences.load(preferences.getJSONObject("preferences")) : new UserPreferences(), admin);
+    }
+
+    /**
+     * This constructor is used, when loading data from the disk in the binary format
+     */
+    public User(UUID id, String username, String name, String lastName, String email, String password, LocalDateTime created, UserPreferences preferences, boolean admin) {
         this.id = id;
         this.username = username;
         this.password = password;
@@ -51,8 +69,9 @@ public final class User implements Entity, Comparable<User> {
         this.lastName = lastName;
         this.email = email;
         this.created = created;
-        this.preferences = preferences.has("preferences") ? UserPreferences.load(preferences.getJSONObject("preferences")) : new UserPreferences();
+        this.preferences = preferences;
         this.admin = admin;
+        this.persisted = true;
     }
 
     /**
@@ -78,7 +97,7 @@ public final class User implements Entity, Comparable<User> {
     }
 
     public List<Account> getAccountsAvailable() {
-        return getAccounts().stream().filter(account -> !account.isClosed()).toList();
+        return Bank.accounts.getOpenUserAccounts(this);
     }
 
     /**
@@ -158,14 +177,27 @@ public final class User implements Entity, Comparable<User> {
     }
 
     /**
-     * Saves this instance to the disk
+     * Saves this instance to the disk, unless nothing has changed since the last save
      */
     public void save() {
+        if (persisted && !preferences.isModified()) {
+            if (serialized != null) SerializationCache.BYTES_AVOIDED.addAndGet(serialized.length());
+            return;
+        }
+        serialized = null;
         Entity.super.save(DATA_FOLDER, id);
+        preferences.markSaved();
+        persisted = true;
+    }
+
+    @Override
+    public String serialize() {
+        if (serialized == null || preferences.isModified()) serialized = toJSON().toString();
+        return serialized;
     }
 
     public static User load(JSONObject object) {
-        return new User(UUID.fromString(object.getString("id")),
+        User user = new User(UUID.fromString(object.getString("id")),
                 object.getString("username"),
                 object.getString("name"),
                 object.getString("last_name"),
@@ -174,6 +206,91 @@ public final class User implements Entity, Comparable<User> {
                 Utils.parseEpoch(object.getLong("created_at")),
                 object,
                 object.getBoolean("admin"));
+        user.serialized = object.toString();
+        return user;
+    }
+
+    /**
+     * Static loader method - streaming, the document is decoded without building a {@link JSONObject} tree
+     *
+     * @param parser parser positioned at the start of the user document
+     * @return {@code User} instance
+     */
+    public static User load(JSONPullParser parser) {
+        UUID id = null;
+        String username = null, name = null, lastName = null, email = null, password = null;
+        LocalDateTime created = null;
+        boolean admin = false;
+        UserPreferences preferences = new UserPreferences();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "id" -> id = parser.nextUUID();
+                case "username" -> username = parser.nextString();
+                case "name" -> name = parser.nextString();
+                case "last_name" -> lastName = parser.nextString();
+                case "email" -> email = parser.nextString();
+                case "password" -> password = parser.nextString();
+                case "created_at" -> created = Utils.parseEpoch(parser.nextLong());
+                case "admin" -> admin = parser.nextBoolean();
+                case "preferences" -> {
+                    parser.beginObject();
+                    while (parser.hasNext()) {
+                        String key = parser.nextName();
+                        if (parser.peek() == JSONPullParser.Token.STRING) preferences.put(key, parser.nextString());
+                        else parser.skipValue();
+                    }
+                    parser.endObject();
+                }
+                default -> parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return new User(id, username, name, lastName, email, password, created, preferences, admin);
+    }
+
+    /**
+     * Static loader method - binary format
+     *
+     * @param reader payload reader of an {@link BinaryCodec.Kind#USER} record
+     * @return {@code User} instance
+     */
+    public static User load(BinaryCodec.Reader reader) {
+        UUID id = reader.readUUID();
+        String username = reader.readString();
+        String password = reader.readString();
+        String email = reader.readString();
+        String name = reader.readString();
+        String lastName = reader.readString();
+        boolean admin = reader.readBoolean();
+        LocalDateTime created = Utils.parseEpoch(reader.readVarLong());
+        UserPreferences preferences = new UserPreferences();
+        for (int i = reader.readVarInt(); i > 0; i--) {
+            preferences.put(reader.readString(), reader.readString());
+        }
+        return new User(id, username, name, lastName, email, password, created, preferences, admin);
+    }
+
+    @Override
+    public void write(BinaryCodec.Writer writer) {
+        writer.writeUUID(id)
+                .writeString(username)
+                .writeString(password)
+                .writeString(email)
+                .writeString(name)
+                .writeString(lastName)
+                .writeBoolean(admin)
+                .writeVarLong(Utils.toEpoch(created))
+                .writeVarLong(preferences.size());
+        preferences.forEach((key, value) -> writer.writeString(key.toString()).writeString(value.toString()));
+    }
+
+    @Override
+    public byte[] encode(EntityFormat format) {
+        return switch (format) {
+            case JSON -> serialize().getBytes(StandardCharsets.UTF_8);
+            case BINARY -> BinaryCodec.encode(BinaryCodec.Kind.USER, this);
+        };
     }
 
     @Override
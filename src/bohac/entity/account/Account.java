@@ -3,20 +3,37 @@ package bohac.entity.account;
 import bohac.Bank;
 import bohac.Configuration;
 import bohac.auditlog.AccountAuditLog;
+import bohac.auditlog.AuditLogFile;
 import bohac.auditlog.AuditEvent;
 import bohac.auditlog.events.*;
 import bohac.entity.User;
 import bohac.entity.Entity;
+import bohac.storage.BinaryCodec;
+import bohac.storage.EntityFormat;
+import bohac.storage.EntityLinker;
+import bohac.storage.JSONPullParser;
+import bohac.storage.Journal;
+import bohac.storage.SerializationCache;
+import bohac.storage.TransactionSegment;
+import bohac.transaction.AmountIndex;
 import bohac.transaction.IncomingTransaction;
 import bohac.transaction.OutgoingTransaction;
+import bohac.transaction.PendingCredit;
+import bohac.transaction.StandingOrder;
 import bohac.transaction.Transaction;
+import bohac.transaction.TransactionPage;
 import bohac.ui.TerminalSession;
 import bohac.ui.TerminalUtils;
 import bohac.util.Utils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * The {@code Account} class represents a single account.
@@ -38,6 +55,9 @@ public final class Account implements Entity, Comparable<Account> {
             new Account(Type.SAVINGS_ACCOUNT, Currency.getInstance("CZK"), User.DEFAULT_USERS.get(0), "Adminuv account")
     );
 
+    private static final int FLAG_CLOSED = 1, FLAG_LAST_ACCESS = 2, FLAG_TRANSACTIONS = 4, FLAG_STANDING_ORDERS = 8,
+            FLAG_PENDING_CREDITS = 16;
+
     /**
      * The {@code Type} enum represents the type of {@code Account} instance
      */
@@ -57,17 +77,58 @@ public final class Account implements Entity, Comparable<Account> {
     private final UUID id;
     private final Type type;
     private final Currency currency;
-    private final AccountAuditLog auditLog;
+    private final AuditLogFile auditLog;
     private final List<Transaction> transactionHistory;
     private final Set<User> owners;
     private String name;
-    private float balance;
+    /**
+     * Balance in the minor units of the currency, see {@link Money}
+     */
+    private volatile long balance;
     private boolean closed = false;
+    /**
+     * Sequence number of the last journal record applied to this account
+     */
+    private long journalSequence;
+    /**
+     * Whether a snapshot of this account exists on the disk
+     */
+    private boolean persisted;
+    /**
+     * Whether any of the scalar fields changed since the last snapshot
+     */
+    private boolean dirty = true;
+    private String serialized;
+    private final SerializationCache<Transaction> transactionHistoryCache = new SerializationCache<>();
+    /**
+     * The transaction history in the {@link Transaction#AMOUNT} order, built on the first page asked for in that order
+     */
+    private AmountIndex amountIndex;
+    /**
+     * The last access event - kept in the account file, so the audit log doesn't need to be read to show it
+     */
+    private AccessAuditEvent lastAccess;
+    /**
+     * Pending standing orders of this account by their id
+     */
+    private final Map<UUID, StandingOrder> standingOrders = new LinkedHashMap<>();
+    /**
+     * Payments from this account whose receiver hasn't been credited yet by their transfer id, see {@link LedgerExecutor}
+     */
+    private final Map<UUID, PendingCredit> pendingCredits = new LinkedHashMap<>();
+    /**
+     * Owner ids of a loaded account, until they are resolved by {@link #link(EntityLinker)}
+     */
+    private Set<UUID> ownerIDs;
+    /**
+     * Whether the loaded account file still had the history embedded and needs to be rewritten once it's linked
+     */
+    private boolean migrated;
 
     /**
      * This constructor is used, when loading data from the disk
      */
-    public Account(UUID id, Type type, Currency currency, AccountAuditLog auditLog, List<Transaction> transactionHistory, Set<User> owners, float balance) {
+    public Account(UUID id, Type type, Currency currency, AuditLogFile auditLog, List<Transaction> transactionHistory, Set<User> owners, long balance) {
         this.id = id;
         this.type = type;
         this.currency = currency;
@@ -84,9 +145,9 @@ public final class Account implements Entity, Comparable<Account> {
         this.id = UUID.randomUUID();
         this.type = type;
         this.currency = currency;
-        this.auditLog = new AccountAuditLog();
+        this.auditLog = AuditLogFile.create(id);
         this.owners = new HashSet<>();
-        this.transactionHistory = new ArrayList<>();
+        this.transactionHistory = Configuration.TRANSACTION_SEGMENTS ? TransactionSegment.of(id) : new ArrayList<>();
     }
 
     /**
@@ -109,7 +170,9 @@ public final class Account implements Entity, Comparable<Account> {
     public boolean addOwner(User loggedInUser, User owner, String auditRecord) {
         if (owners.contains(owner)) return false;
         owners.add(owner);
-        auditLog.addEvent(new ModificationAuditEvent(loggedInUser, String.format(auditRecord, owner.getFullName())));
+        if (Bank.accounts != null) Bank.accounts.reindex(this);
+        journal("OWNER", new JSONObject().put("owner", owner.getId()));
+        addAuditEvent(new ModificationAuditEvent(loggedInUser, String.format(auditRecord, owner.getFullName())));
         return true;
     }
 
@@ -120,8 +183,9 @@ public final class Account implements Entity, Comparable<Account> {
      * @param name the new name
      */
     public void changeName(User user, String name, String auditRecord) {
-        this.name = name;
-        auditLog.addEvent(new ModificationAuditEvent(user, auditRecord));
+        setName(name);
+        journal("RENAME", new JSONObject().put("name", name));
+        addAuditEvent(new ModificationAuditEvent(user, auditRecord));
     }
 
     /**
@@ -132,51 +196,190 @@ public final class Account implements Entity, Comparable<Account> {
      */
     public boolean close(User user) {
         setClosed(true);
-        auditLog.addEvent(new AccountClosureEvent(user));
+        journal("CLOSURE", new JSONObject());
+        addAuditEvent(new AccountClosureEvent(user));
         return true;
     }
 
     /**
-     * This method tries to authorize a transaction
+     * This method tries to authorize a transaction, see {@link #submitPayment(long, Account, User, String)}
      *
-     * @param amount          transaction amount
+     * @param amount          transaction amount in the minor units of the account currency
      * @param receiverAccount transaction target
      * @param user            transaction authorizer
-     * @return true if the transaction went through successfully, false otherwise
-     */
-    public boolean authorizePayment(float amount, Account receiverAccount, User user) {
-        if (receiverAccount.equals(this)) return false;
-        float fee = Balance.convert(Configuration.TRANSACTION_FEE.balance(), Configuration.TRANSACTION_FEE.currency(), getCurrency());
-        if (balance < fee + amount) return false;
-        addTransaction(new OutgoingTransaction(user, receiverAccount, this, amount, getCurrency()));
-        this.balance -= amount + fee;
-        return true;
+     * @return the outcome of the payment
+     */
+    public TransferEngine.Result authorizePayment(long amount, Account receiverAccount, User user) {
+        try {
+            return submitPayment(amount, receiverAccount, user, null).join().result();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Submits a payment from this account through the {@link Bank#ledger} if it's running, otherwise through the
+     * {@link Bank#TRANSFERS} - see {@link TransferEngine#transfer(UUID, Account, Account, long, User)} and
+     * {@link LedgerExecutor#submit(UUID, Account, Account, long, User)}. A payment submitted again with the same
+     * idempotency key isn't posted twice, see {@link IdempotencyIndex}.
+     *
+     * @param amount          transaction amount in the minor units of the account currency
+     * @param receiverAccount transaction target
+     * @param user            transaction authorizer
+     * @param idempotencyKey  key of the payment chosen by the client, null if there is none
+     * @return the outcome of the payment
+     */
+    public CompletableFuture<IdempotencyIndex.Receipt> submitPayment(long amount, Account receiverAccount, User user,
+                                                                     String idempotencyKey) {
+        return Bank.IDEMPOTENCY.submit(user, idempotencyKey, this, receiverAccount, amount, id -> Bank.ledger != null
+                ? Bank.ledger.submit(id, this, receiverAccount, amount, user)
+                : CompletableFuture.completedFuture(Bank.TRANSFERS.transfer(id, this, receiverAccount, amount, user)));
     }
 
     /**
-     * Add a transaction to this account's history
+     * Add a transaction to this account's history, the amount of an incoming transaction is added to the balance
      *
      * @param transaction transaction
      */
     public void addTransaction(Transaction transaction) {
-        transactionHistory.add(transaction);
-        if (transaction instanceof IncomingTransaction) {
-            addFunds(transaction.getAmount(), transaction.getCurrency());
-        }
+        long delta = transaction instanceof IncomingTransaction
+                ? Balance.convert(transaction.getAmount(), transaction.getCurrency(), currency) : 0;
+        Bank.TRANSFERS.locked(this, () -> {
+            post(transaction, delta);
+            return null;
+        });
     }
 
     /**
      * Add funds to this account
      *
-     * @param amount   amount of money
+     * @param amount   amount of money in the minor units of the currency
      * @param currency currency
      */
-    public void addFunds(float amount, Currency currency) {
-        if (currency != this.currency) {
-            balance += Balance.convert(amount, currency, this.currency);
-            return;
-        }
-        balance += amount;
+    public void addFunds(long amount, Currency currency) {
+        long converted = Balance.convert(amount, currency, this.currency);
+        Bank.TRANSFERS.locked(this, () -> balance = Money.add(balance, converted));
+    }
+
+    /**
+     * Appends a transaction to the history and moves the balance, the caller holds the lock of this account in the
+     * {@link TransferEngine}
+     *
+     * @param transaction transaction
+     * @param delta       balance change in the minor units of the account currency
+     */
+    void post(Transaction transaction, long delta) {
+        balance = Money.add(balance, delta);
+        transactionHistory.add(transaction);
+        journal("TRANSACTION", new JSONObject()
+                .put("transaction", transaction.toJSON())
+                .put("index", transactionHistory.size() - 1)
+                .put("balance", Money.toDecimal(balance, currency)));
+    }
+
+    /**
+     * Posts the outgoing leg of a payment whose receiver is credited later, the pending credit is journaled together
+     * with the leg. The caller holds the lock of this account in the {@link TransferEngine}.
+     *
+     * @param transaction outgoing transaction
+     * @param delta       balance change in the minor units of the account currency
+     * @param pending     incoming leg of the payment
+     */
+    void post(Transaction transaction, long delta, PendingCredit pending) {
+        balance = Money.add(balance, delta);
+        transactionHistory.add(transaction);
+        pendingCredits.put(pending.id(), pending);
+        journal("TRANSACTION", new JSONObject()
+                .put("transaction", transaction.toJSON())
+                .put("index", transactionHistory.size() - 1)
+                .put("balance", Money.toDecimal(balance, currency))
+                .put("pending_credit", pending.toJSON()));
+    }
+
+    /**
+     * Forgets a pending credit once the receiver has been credited. The caller holds the lock of this account in the
+     * {@link TransferEngine}.
+     *
+     * @param id transfer id
+     */
+    void settleCredit(UUID id) {
+        if (pendingCredits.remove(id) != null) journal("CREDIT_SETTLED", new JSONObject().put("id", id));
+    }
+
+    /**
+     * @return the payments from this account whose receiver hasn't been credited yet
+     */
+    public List<PendingCredit> getPendingCredits() {
+        return Bank.TRANSFERS.locked(this, () -> List.copyOf(pendingCredits.values()));
+    }
+
+    /**
+     * Looks for a transaction of a transfer among the transactions posted since a given time
+     *
+     * @param id    transfer id
+     * @param since time the transaction can't be older than
+     * @return whether the history contains the transaction
+     */
+    boolean hasTransaction(UUID id, LocalDateTime since) {
+        return Bank.TRANSFERS.locked(this, () -> {
+            for (int i = transactionHistory.size() - 1; i >= 0; i--) {
+                Transaction transaction = transactionHistory.get(i);
+                if (id.equals(transaction.getId())) return true;
+                if (transaction.getDateTime().isBefore(since)) return false;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @return the pending standing orders of this account
+     */
+    public List<StandingOrder> getStandingOrders() {
+        return Bank.TRANSFERS.locked(this, () -> List.copyOf(standingOrders.values()));
+    }
+
+    /**
+     * Adds a standing order paid from this account and schedules it
+     *
+     * @param order standing order
+     */
+    public void addStandingOrder(StandingOrder order) {
+        if (!order.sender().equals(id)) throw new IllegalArgumentException("The standing order is not paid from this account");
+        updateStandingOrder(order);
+        if (Bank.standingOrders != null) Bank.standingOrders.schedule(order);
+    }
+
+    /**
+     * Cancels a standing order of this account
+     *
+     * @param orderID standing order id
+     * @return false if there is no such pending standing order
+     */
+    public boolean cancelStandingOrder(UUID orderID) {
+        boolean removed = Bank.TRANSFERS.locked(this, () -> {
+            if (standingOrders.remove(orderID) == null) return false;
+            journal("STANDING_ORDER_CANCEL", new JSONObject().put("id", orderID));
+            return true;
+        });
+        if (removed && Bank.standingOrders != null) Bank.standingOrders.cancel(orderID);
+        return removed;
+    }
+
+    /**
+     * Stores a standing order of this account, a finished one is removed. An executed order is only stored if it
+     * hasn't been cancelled in the meantime.
+     *
+     * @param order standing order
+     * @return false if the order has been cancelled
+     */
+    public boolean updateStandingOrder(StandingOrder order) {
+        return Bank.TRANSFERS.locked(this, () -> {
+            if (order.executions() > 0 && !standingOrders.containsKey(order.id())) return false;
+            if (order.isFinished()) standingOrders.remove(order.id());
+            else standingOrders.put(order.id(), order);
+            journal("STANDING_ORDER", new JSONObject().put("order", order.toJSON()));
+            return true;
+        });
     }
 
     /**
@@ -185,10 +388,80 @@ public final class Account implements Entity, Comparable<Account> {
      * @param user user who accessed the account
      */
     public void logAccess(User user) {
-        auditLog.addEvent(new AccessAuditEvent(user));
+        addAuditEvent(new AccessAuditEvent(user));
         save();
     }
 
+    /**
+     * Adds an event to the audit log and records it in the journal
+     *
+     * @param event audit event
+     */
+    private void addAuditEvent(AuditEvent event) {
+        auditLog.addEvent(event);
+        if (event instanceof AccessAuditEvent access) {
+            lastAccess = access;
+            journal("LAST_ACCESS", access.toJSON());
+        }
+        dirty = true;
+    }
+
+    /**
+     * Appends a mutation of this account to the journal, if journaling is enabled
+     *
+     * @param op   mutation type
+     * @param data mutation payload
+     */
+    private void journal(String op, JSONObject data) {
+        dirty = true;
+        if (!Configuration.JOURNALING || Bank.journal == null) return;
+        journalSequence = Bank.journal.append(id, op, data);
+    }
+
+    /**
+     * Applies a journal record to this account, records already contained in the loaded snapshot are ignored
+     *
+     * @param record journal record
+     */
+    public void replay(Journal.Record record) {
+        if (record.sequence() <= journalSequence) return;
+        JSONObject data = record.data();
+        switch (record.op()) {
+            case "TRANSACTION" -> {
+                // The transaction segment could already contain the transaction
+                if (data.optInt("index", transactionHistory.size()) >= transactionHistory.size())
+                    transactionHistory.add(Transaction.load(data.getJSONObject("transaction")));
+                balance = Money.of(data.getBigDecimal("balance"), currency, Configuration.MONEY_ROUNDING);
+                if (data.has("pending_credit")) {
+                    PendingCredit pending = PendingCredit.load(data.getJSONObject("pending_credit"));
+                    pendingCredits.put(pending.id(), pending);
+                }
+            }
+            case "CREDIT_SETTLED" -> pendingCredits.remove(UUID.fromString(data.getString("id")));
+            // Audit events are appended to the audit log file directly, journals written before that still contain them.
+            // Only the last access is taken from them, replaying must neither append to the file nor journal again.
+            case "AUDIT_EVENT" -> {
+                if (AuditEvent.load(data.getJSONObject("event")) instanceof AccessAuditEvent access) lastAccess = access;
+            }
+            case "LAST_ACCESS" -> lastAccess = new AccessAuditEvent(GenericAuditEvent.load(data));
+            case "RENAME" -> setName(data.getString("name"));
+            case "CLOSURE" -> setClosed(true);
+            case "STANDING_ORDER" -> {
+                StandingOrder order = StandingOrder.load(data.getJSONObject("order"));
+                if (order.isFinished()) standingOrders.remove(order.id());
+                else standingOrders.put(order.id(), order);
+            }
+            case "STANDING_ORDER_CANCEL" -> standingOrders.remove(UUID.fromString(data.getString("id")));
+            case "OWNER" -> Bank.users.getByID(UUID.fromString(data.getString("owner"))).ifPresent(owner -> {
+                owners.add(owner);
+                if (Bank.accounts != null) Bank.accounts.reindex(this);
+            });
+            default -> Utils.printDebugMessage(String.format("Unknown journal record %s for account %s", record.op(), id));
+        }
+        journalSequence = record.sequence();
+        dirty = true;
+    }
+
     /**
      * Marks this account as closed
      *
@@ -196,6 +469,8 @@ public final class Account implements Entity, Comparable<Account> {
      */
     public void setClosed(boolean closed) {
         this.closed = closed;
+        this.dirty = true;
+        if (Bank.accounts != null) Bank.accounts.reindex(this);
     }
 
     /**
@@ -205,6 +480,8 @@ public final class Account implements Entity, Comparable<Account> {
      */
     private void setName(String name) {
         this.name = name;
+        this.dirty = true;
+        if (Bank.accounts != null) Bank.accounts.reindex(this);
     }
 
     /**
@@ -254,23 +531,96 @@ public final class Account implements Entity, Comparable<Account> {
         return new HashSet<>(owners);
     }
 
+    /**
+     * @return the audit log, read from the disk on first access
+     */
     public AccountAuditLog getAuditLog() {
-        return auditLog;
+        return auditLog.get();
+    }
+
+    /**
+     * @return the last access event, null if the account has never been accessed
+     */
+    public AccessAuditEvent getLastAccess() {
+        return lastAccess;
     }
 
     public Currency getCurrency() {
         return currency;
     }
 
+    /**
+     * @return read-only view of the transaction history, transactions kept in a segment file are decoded on access
+     */
     public List<Transaction> getTransactionHistory() {
-        return new ArrayList<>(transactionHistory);
+        return Collections.unmodifiableList(transactionHistory);
+    }
+
+    /**
+     * Reads a page of the transaction history, without copying or sorting the whole history
+     *
+     * @param order    {@link Transaction#CHRONOLOGICAL} or {@link Transaction#AMOUNT}
+     * @param pageSize how many transactions per page
+     * @param cursor   {@link TransactionPage#next()} of the previous page, null for the first one
+     * @return the page
+     * @throws IllegalArgumentException if the order isn't supported or the cursor doesn't belong to it
+     */
+    public TransactionPage getTransactionHistory(Comparator<Transaction> order, int pageSize, String cursor) {
+        if (order == Transaction.CHRONOLOGICAL)
+            return Bank.TRANSFERS.locked(this, () -> TransactionPage.chronological(transactionHistory, pageSize, cursor));
+        if (order == Transaction.AMOUNT) return Bank.TRANSFERS.locked(this, () -> {
+            if (amountIndex == null) amountIndex = transactionHistory instanceof TransactionSegment segment
+                    ? new AmountIndex(transactionHistory, segment.companion(".amounts")) : new AmountIndex(transactionHistory);
+            return amountIndex.page(pageSize, cursor);
+        });
+        throw new IllegalArgumentException("Unsupported transaction history order");
     }
 
     /**
      * Saves this instance to the disk
      */
     public void save() {
+        auditLog.flush();
+        if (Configuration.JOURNALING && Bank.journal != null && persisted) {
+            // The write-behind persistence runs the checkpoints on its own thread
+            if (Bank.persistence != null) Bank.persistence.submitJournal();
+            else {
+                Bank.journal.flush();
+                if (Bank.journal.needsCheckpoint()) Bank.accounts.checkpoint(Bank.journal);
+            }
+            return;
+        }
+        if (persisted && !isDirty()) {
+            if (serialized != null) SerializationCache.BYTES_AVOIDED.addAndGet(serialized.length());
+            return;
+        }
         Entity.super.save(DATA_FOLDER, id);
+        persisted = true;
+    }
+
+    /**
+     * @return whether this account changed since it was last serialized
+     */
+    private boolean isDirty() {
+        return dirty || (!(transactionHistory instanceof TransactionSegment) && transactionHistoryCache.isDirty(transactionHistory));
+    }
+
+    /**
+     * Writes out the whole account to the disk right away, a write of it still queued up is older and is dropped
+     */
+    public void snapshot() {
+        if (transactionHistory instanceof TransactionSegment segment) segment.force();
+        auditLog.flush();
+        Entity.super.saveNow(DATA_FOLDER, id);
+        if (Bank.persistence != null) Bank.persistence.discard(id);
+        persisted = true;
+    }
+
+    /**
+     * Closes the transaction segment file of this account, it's opened again if the history is accessed later
+     */
+    public void closeHistory() {
+        if (transactionHistory instanceof TransactionSegment segment) segment.close();
     }
 
     /**
@@ -280,48 +630,276 @@ public final class Account implements Entity, Comparable<Account> {
      * @return {@code Account} instance
      */
     public static Account load(JSONObject object) {
-        List<Transaction> transactions = new ArrayList<>();
-        AccountAuditLog accountAuditLog = new AccountAuditLog();
-        Set<User> owners = new HashSet<>();
+        UUID id = UUID.fromString(object.getString("id"));
+        Currency currency = Currency.getInstance(object.getString("currency"));
+        Set<UUID> owners = new HashSet<>();
+        for (Object owner : object.getJSONArray("owners")) owners.add(UUID.fromString(String.valueOf(owner)));
+
+        List<Transaction> transactions = null;
+        if (object.has("transaction_history")) {
+            transactions = new ArrayList<>();
+            for (Object transaction : object.getJSONArray("transaction_history"))
+                transactions.add(Transaction.load((JSONObject) transaction));
+        }
 
-        for (Object owner : object.getJSONArray("owners")) {
-            Bank.users.getByID(UUID.fromString(String.valueOf(owner))).ifPresent(owners::add);
+        List<StandingOrder> orders = null;
+        if (object.has("standing_orders")) {
+            orders = new ArrayList<>();
+            for (Object order : object.getJSONArray("standing_orders")) orders.add(StandingOrder.load((JSONObject) order));
         }
 
-        if (object.has("transaction_history"))
-            object.getJSONArray("transaction_history").forEach(transaction -> {
-                transactions.add(Transaction.load((JSONObject) transaction));
-            });
+        List<PendingCredit> credits = null;
+        if (object.has("pending_credits")) {
+            credits = new ArrayList<>();
+            for (Object credit : object.getJSONArray("pending_credits")) credits.add(PendingCredit.load((JSONObject) credit));
+        }
 
+        List<AuditEvent> auditLog = null;
         if (object.has("audit_log")) {
-            object.getJSONArray("audit_log").forEach(event -> {
-                switch (AuditEvent.Type.valueOf(((JSONObject) event).getString("type"))) {
-                    case ACCESS ->
-                            accountAuditLog.addEvent(new AccessAuditEvent(GenericAuditEvent.load((JSONObject) event)));
-                    case CLOSURE ->
-                            accountAuditLog.addEvent(new AccountClosureEvent(GenericAuditEvent.load((JSONObject) event)));
-                    case CREATION ->
-                            accountAuditLog.addEvent(new AccountCreationAuditEvent(AccountCreationAuditEvent.load((JSONObject) event)));
-                    case MODIFICATION -> accountAuditLog.addEvent(ModificationAuditEvent.load((JSONObject) event));
-                }
-            });
+            auditLog = new ArrayList<>();
+            for (Object event : object.getJSONArray("audit_log")) auditLog.add(AuditEvent.load((JSONObject) event));
         }
 
-
-        Account account = new Account(UUID.fromString(object.getString("id")),
+        return create(id,
                 Type.valueOf(object.getString("type")),
-                Currency.getInstance(object.getString("currency")),
-                accountAuditLog,
-                transactions,
+                currency,
+                Money.of(object.getBigDecimal("balance"), currency, Configuration.MONEY_ROUNDING),
+                object.has("name") ? object.getString("name") : null,
+                object.has("closed") && object.getBoolean("closed"),
+                object.optLong("journal_seq"),
                 owners,
-                object.getFloat("balance"));
+                object.has("last_access") ? new AccessAuditEvent(GenericAuditEvent.load(object.getJSONObject("last_access"))) : null,
+                transactions,
+                auditLog,
+                orders,
+                credits);
+    }
+
+    /**
+     * Static loader method - streaming, the document is decoded straight into the domain objects
+     *
+     * @param parser parser positioned at the start of the account document
+     * @return {@code Account} instance
+     */
+    public static Account load(JSONPullParser parser) {
+        UUID id = null;
+        Type type = null;
+        Currency currency = null;
+        BigDecimal balance = BigDecimal.ZERO;
+        String name = null;
+        boolean closed = false;
+        long journalSequence = 0;
+        Set<UUID> owners = new HashSet<>();
+        AccessAuditEvent lastAccess = null;
+        List<Transaction> transactions = null;
+        List<AuditEvent> auditLog = null;
+        List<StandingOrder> orders = null;
+        List<PendingCredit> credits = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "id" -> id = parser.nextUUID();
+                case "type" -> type = Type.valueOf(parser.nextString());
+                case "currency" -> currency = Currency.getInstance(parser.nextString());
+                case "balance" -> balance = parser.nextDecimal();
+                case "name" -> name = parser.nextString();
+                case "closed" -> closed = parser.nextBoolean();
+                case "journal_seq" -> journalSequence = parser.nextLong();
+                case "last_access" -> lastAccess = new AccessAuditEvent(AuditEvent.load(parser));
+                case "owners" -> {
+                    parser.beginArray();
+                    while (parser.hasNext()) owners.add(parser.nextUUID());
+                    parser.endArray();
+                }
+                case "transaction_history" -> {
+                    transactions = new ArrayList<>();
+                    parser.beginArray();
+                    while (parser.hasNext()) transactions.add(Transaction.load(parser));
+                    parser.endArray();
+                }
+                case "audit_log" -> {
+                    auditLog = new ArrayList<>();
+                    parser.beginArray();
+                    while (parser.hasNext()) auditLog.add(AuditEvent.load(parser));
+                    parser.endArray();
+                }
+                case "standing_orders" -> {
+                    orders = new ArrayList<>();
+                    parser.beginArray();
+                    while (parser.hasNext()) orders.add(StandingOrder.load(parser));
+                    parser.endArray();
+                }
+                case "pending_credits" -> {
+                    credits = new ArrayList<>();
+                    parser.beginArray();
+                    while (parser.hasNext()) credits.add(PendingCredit.load(parser));
+                    parser.endArray();
+                }
+                default -> parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        return create(id, type, currency, Money.of(balance, currency, Configuration.MONEY_ROUNDING), name, closed,
+                journalSequence, owners, lastAccess, transactions, auditLog, orders, credits);
+    }
+
+    /**
+     * Static loader method - binary format
+     *
+     * @param reader payload reader of an {@link BinaryCodec.Kind#ACCOUNT} record
+     * @return {@code Account} instance
+     */
+    public static Account load(BinaryCodec.Reader reader) {
+        UUID id = reader.readUUID();
+        Type type = Type.values()[reader.readByte()];
+        Currency currency = reader.readCurrency();
+        long balance = reader.readMoney(currency);
+        int flags = reader.readByte();
+        String name = reader.readString();
+
+        Set<UUID> owners = new HashSet<>();
+        for (int i = reader.readVarInt(); i > 0; i--) owners.add(reader.readUUID());
+        long journalSequence = reader.readVarLong();
+        AccessAuditEvent lastAccess = null;
+        if ((flags & FLAG_LAST_ACCESS) != 0) {
+            UUID user = reader.readUUID();
+            lastAccess = new AccessAuditEvent(new GenericAuditEvent(user, Utils.parseEpoch(reader.readVarLong()), AuditEvent.Type.ACCESS));
+        }
 
-        if (object.has("closed") && object.getBoolean("closed")) account.setClosed(true);
-        if (object.has("name")) account.setName(object.getString("name"));
+        List<Transaction> transactions = null;
+        if ((flags & FLAG_TRANSACTIONS) != 0) {
+            transactions = new ArrayList<>();
+            for (int i = reader.readVarInt(); i > 0; i--) transactions.add(reader.readTransaction());
+        }
+
+        List<StandingOrder> orders = null;
+        if ((flags & FLAG_STANDING_ORDERS) != 0) {
+            orders = new ArrayList<>();
+            for (int i = reader.readVarInt(); i > 0; i--) orders.add(StandingOrder.load(reader));
+        }
+
+        List<PendingCredit> credits = null;
+        if ((flags & FLAG_PENDING_CREDITS) != 0) {
+            credits = new ArrayList<>();
+            for (int i = reader.readVarInt(); i > 0; i--) credits.add(PendingCredit.load(reader));
+        }
+
+        return create(id, type, currency, balance, name, (flags & FLAG_CLOSED) != 0, journalSequence, owners, lastAccess,
+                transactions, null, orders, credits);
+    }
+
+    /**
+     * Puts together a loaded account. The transaction history and the audit log embedded in the account file by older
+     * versions are moved to their own files, unless that has happened already. The references to the users are left
+     * unresolved, see {@link #link(EntityLinker)}.
+     *
+     * @param transactions embedded transaction history, null if there is none
+     * @param auditLog     embedded audit log, null if there is none
+     * @param orders       pending standing orders, null if there are none
+     * @param credits      pending credits, null if there are none
+     * @return {@code Account} instance
+     */
+    private static Account create(UUID id, Type type, Currency currency, long balance, String name, boolean closed,
+                                  long journalSequence, Set<UUID> owners, AccessAuditEvent lastAccess,
+                                  List<Transaction> transactions, List<AuditEvent> auditLog, List<StandingOrder> orders,
+                                  List<PendingCredit> credits) {
+        List<Transaction> transactionHistory = Configuration.TRANSACTION_SEGMENTS ? TransactionSegment.of(id) : new ArrayList<>();
+        // The embedded transaction history is only migrated into an empty segment, otherwise it has been migrated already
+        if (transactions != null && transactionHistory.isEmpty()) transactionHistory.addAll(transactions);
+
+        AuditLogFile auditLogFile = AuditLogFile.of(id);
+        if (auditLog != null && !auditLogFile.exists()) {
+            for (AuditEvent event : auditLog) {
+                auditLogFile.addEvent(event);
+                if (event instanceof AccessAuditEvent access && (lastAccess == null || access.compareTo(lastAccess) > 0))
+                    lastAccess = access;
+            }
+        }
 
+        Account account = new Account(id, type, currency, auditLogFile, transactionHistory, new HashSet<>(), balance);
+        account.ownerIDs = owners;
+        account.name = name;
+        account.closed = closed;
+        account.journalSequence = journalSequence;
+        account.lastAccess = lastAccess;
+        if (orders != null) orders.forEach(order -> account.standingOrders.put(order.id(), order));
+        if (credits != null) credits.forEach(credit -> account.pendingCredits.put(credit.id(), credit));
+        account.persisted = true;
+        account.dirty = false;
+        account.migrated = (Configuration.TRANSACTION_SEGMENTS && transactions != null) || auditLog != null;
         return account;
     }
 
+    /**
+     * Second phase of loading - resolves the owners and the last access of a loaded account against the user table.
+     * An account migrated from the embedded history layout is rewritten now, once it's complete.
+     *
+     * @param users user table
+     */
+    public void link(EntityLinker<User> users) {
+        if (ownerIDs != null) {
+            for (UUID owner : ownerIDs) users.resolve(owner, this).ifPresent(owners::add);
+            ownerIDs = null;
+        }
+        if (lastAccess != null) lastAccess.link(users, this);
+        if (migrated) {
+            migrated = false;
+            Utils.printDebugMessage(String.format("Account %s migrated to separate history files", id));
+            snapshot();
+        }
+    }
+
+    /**
+     * @return ids of the owners, unresolved ones included
+     */
+    private Set<UUID> ownerIDs() {
+        if (ownerIDs != null) return ownerIDs;
+        Set<UUID> ids = new HashSet<>();
+        for (User owner : owners) ids.add(owner.getId());
+        return ids;
+    }
+
+    @Override
+    public void write(BinaryCodec.Writer writer) {
+        boolean embedded = !(transactionHistory instanceof TransactionSegment);
+        int flags = (closed ? FLAG_CLOSED : 0) | (lastAccess != null ? FLAG_LAST_ACCESS : 0) | (embedded ? FLAG_TRANSACTIONS : 0)
+                | (standingOrders.isEmpty() ? 0 : FLAG_STANDING_ORDERS) | (pendingCredits.isEmpty() ? 0 : FLAG_PENDING_CREDITS);
+        writer.writeUUID(id)
+                .writeByte(type.ordinal())
+                .writeCurrency(currency)
+                .writeVarLong(balance)
+                .writeByte(flags)
+                .writeString(name)
+                .writeVarLong(ownerIDs().size());
+        ownerIDs().forEach(writer::writeUUID);
+        writer.writeVarLong(journalSequence);
+        if (lastAccess != null)
+            writer.writeUUID(lastAccess.getUserID()).writeVarLong(Utils.toEpoch(lastAccess.getDateTime()));
+        if (embedded) {
+            writer.writeVarLong(transactionHistory.size());
+            transactionHistory.forEach(writer::writeTransaction);
+        }
+        if (!standingOrders.isEmpty()) {
+            writer.writeVarLong(standingOrders.size());
+            standingOrders.values().forEach(order -> order.write(writer));
+        }
+        if (!pendingCredits.isEmpty()) {
+            writer.writeVarLong(pendingCredits.size());
+            pendingCredits.values().forEach(credit -> credit.write(writer));
+        }
+    }
+
+    @Override
+    public byte[] encode(EntityFormat format) {
+        // A payment can't be posted halfway through, the balance has to match the history
+        return Bank.TRANSFERS.locked(this, () -> switch (format) {
+            case JSON -> serialize().getBytes(StandardCharsets.UTF_8);
+            case BINARY -> BinaryCodec.encode(BinaryCodec.Kind.ACCOUNT, this);
+        });
+    }
+
     @Override
     public JSONObject toJSON() {
         JSONArray transactionHistory = new JSONArray();
@@ -331,15 +909,66 @@ public final class Account implements Entity, Comparable<Account> {
                 .put("id", id)
                 .put("type", type)
                 .put("currency", currency)
-                .put("balance", balance)
+                .put("balance", Money.toDecimal(balance, currency))
                 .put("transaction_history", transactionHistory)
-                .put("audit_log", auditLog.toJSON())
+                .put("audit_log", getAuditLog().toJSON())
                 .put("name", name)
-                .put("owners", owners.stream().map(user -> user.getId().toString()).toList());
+                .put("owners", ownerIDs().stream().map(UUID::toString).toList());
         if (closed) account.put("closed", true);
+        if (journalSequence > 0) account.put("journal_seq", journalSequence);
+        if (!standingOrders.isEmpty()) account.put("standing_orders", standingOrdersJSON());
+        if (!pendingCredits.isEmpty()) account.put("pending_credits", pendingCreditsJSON());
         return account;
     }
 
+    /**
+     * Serializes this account. Only the scalar fields are serialized every time, the transaction history and the audit
+     * log are append-only, so their already serialized part is reused.
+     *
+     * @return the JSON representation of this account
+     */
+    @Override
+    public String serialize() {
+        if (!isDirty() && serialized != null) {
+            SerializationCache.BYTES_AVOIDED.addAndGet(serialized.length());
+            return serialized;
+        }
+        JSONObject header = new JSONObject()
+                .put("id", id)
+                .put("type", type)
+                .put("currency", currency)
+                .put("balance", Money.toDecimal(balance, currency))
+                .put("name", name)
+                .put("owners", ownerIDs().stream().map(UUID::toString).toList());
+        if (closed) header.put("closed", true);
+        if (journalSequence > 0) header.put("journal_seq", journalSequence);
+        if (lastAccess != null) header.put("last_access", lastAccess.toJSON());
+        if (!standingOrders.isEmpty()) header.put("standing_orders", standingOrdersJSON());
+        if (!pendingCredits.isEmpty()) header.put("pending_credits", pendingCreditsJSON());
+        String headerJSON = header.toString();
+
+        StringBuilder builder = new StringBuilder(headerJSON.substring(0, headerJSON.length() - 1));
+        // Transactions kept in a segment file are not part of the account file
+        if (!(transactionHistory instanceof TransactionSegment))
+            builder.append(",\"transaction_history\":[").append(transactionHistoryCache.serialize(transactionHistory)).append(']');
+        builder.append('}');
+        serialized = builder.toString();
+        dirty = false;
+        return serialized;
+    }
+
+    private JSONArray standingOrdersJSON() {
+        JSONArray orders = new JSONArray();
+        standingOrders.values().forEach(order -> orders.put(order.toJSON()));
+        return orders;
+    }
+
+    private JSONArray pendingCreditsJSON() {
+        JSONArray credits = new JSONArray();
+        pendingCredits.values().forEach(credit -> credits.put(credit.toJSON()));
+        return credits;
+    }
+
     @Override
     public String toString() {
         return getName(true) + " - " + id;
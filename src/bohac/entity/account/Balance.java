@@ -2,20 +2,29 @@ package bohac.entity.account;
 
 import bohac.Bank;
 import bohac.Configuration;
-import org.json.JSONObject;
 
+import java.math.BigDecimal;
 import java.util.Currency;
 
 /**
  * This object represents an amount/currency pair
  *
  * @param currency
- * @param balance
+ * @param amount   amount in the minor units of the currency, see {@link Money}
  */
-public record Balance(Currency currency, float balance) implements Comparable<Balance> {
+public record Balance(Currency currency, long amount) implements Comparable<Balance> {
+    /**
+     * @param currency currency
+     * @param amount   decimal amount, rounded to the minor unit by {@link Configuration#MONEY_ROUNDING}
+     * @return new {@link Balance}
+     */
+    public static Balance of(Currency currency, BigDecimal amount) {
+        return new Balance(currency, Money.of(amount, currency, Configuration.MONEY_ROUNDING));
+    }
+
     @Override
     public String toString() {
-        return String.format("%.2f %s", balance, currency.getCurrencyCode());
+        return String.format("%s %s", Money.format(amount, currency), currency.getCurrencyCode());
     }
 
     /**
@@ -26,28 +35,27 @@ public record Balance(Currency currency, float balance) implements Comparable<Ba
      */
     public Balance normalize() {
         if (currency.getNumericCode() != Configuration.BASE_CURRENCY.getNumericCode()) {
-            return new Balance(Configuration.BASE_CURRENCY, convert(balance, currency, Configuration.BASE_CURRENCY));
+            return new Balance(Configuration.BASE_CURRENCY, convert(amount, currency, Configuration.BASE_CURRENCY));
         }
         return this;
     }
 
     @Override
     public int compareTo(Balance o) {
-        return Float.compare(o.normalize().balance(), this.normalize().balance());
+        return Money.compare(o.normalize().amount(), this.normalize().amount());
     }
 
     /**
-     * Converts a given amount of money from one currency to another using the Conversion API
+     * Converts a given amount of money from one currency to another using the Conversion API, see {@link Bank#RATES}.
+     * The result is rounded by {@link Configuration#MONEY_ROUNDING}.
      *
-     * @param amount amount of money to convert
+     * @param amount amount of money to convert, in the minor units
      * @param from   from currency
      * @param to     to currency
-     * @return the {@code amount} in the {@code to} currency
+     * @return the {@code amount} in the minor units of the {@code to} currency
      */
-    public static float convert(float amount, Currency from, Currency to) {
+    public static long convert(long amount, Currency from, Currency to) {
         if (from == to) return amount;
-        JSONObject json = Bank.API.getJSON(String.format("/latest/currencies/%s/%s.json",
-                from.getCurrencyCode().toLowerCase(), to.getCurrencyCode().toLowerCase()));
-        return amount * json.getFloat(to.getCurrencyCode().toLowerCase());
+        return Money.convert(amount, from, to, Bank.RATES.get(from, to), Configuration.MONEY_ROUNDING);
     }
 }
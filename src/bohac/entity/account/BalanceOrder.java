@@ -0,0 +1,139 @@
+package bohac.entity.account;
+
+import bohac.Bank;
+import bohac.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders accounts by their balance in the {@link Configuration#BASE_CURRENCY}, the richest first - the same order as
+ * {@link Account#compareTo(Account)}, accounts with the same balance keep their original order.
+ * <p>
+ * The comparator converts both balances on every comparison. Here every balance is converted once per sort, each
+ * currency is looked up once, and the converted balance is packed together with the position of the account into a
+ * single {@code long} sort key, so the sort itself runs on a primitive array. Balances too large to share a
+ * {@code long} with the position are sorted by a boxed index sort instead.
+ */
+public final class BalanceOrder {
+    private BalanceOrder() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param accounts accounts
+     * @return the accounts ordered by balance, the richest first
+     */
+    public static List<Account> sort(Collection<Account> accounts) {
+        List<Account> list = new ArrayList<>(accounts);
+        long[] balances = normalized(list);
+        long[] keys = pack(balances);
+        if (keys == null) return fallback(list, balances);
+        if (keys.length >= Configuration.PARALLEL_SORT_THRESHOLD) Arrays.parallelSort(keys);
+        else Arrays.sort(keys);
+        return materialize(list, keys, keys.length);
+    }
+
+    /**
+     * @param accounts accounts
+     * @param n        how many accounts
+     * @return the {@code n} richest accounts ordered by balance, the richest first
+     */
+    public static List<Account> top(Collection<Account> accounts, int n) {
+        List<Account> list = new ArrayList<>(accounts);
+        long[] balances = normalized(list);
+        long[] keys = pack(balances);
+        if (keys == null) {
+            List<Account> sorted = fallback(list, balances);
+            return new ArrayList<>(sorted.subList(0, Math.min(n, sorted.size())));
+        }
+        // Max-heap of the smallest keys seen so far, the root is the first one to be pushed out
+        long[] heap = new long[Math.min(n, keys.length)];
+        int size = 0;
+        for (long key : keys) {
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0 && heap[(i - 1) / 2] < key) {
+                    heap[i] = heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = key;
+            } else if (size > 0 && key < heap[0]) {
+                int i = 0;
+                while (2 * i + 1 < size) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+                    if (heap[child] <= key) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = key;
+            }
+        }
+        Arrays.sort(heap, 0, size);
+        return materialize(list, heap, size);
+    }
+
+    /**
+     * @return balances of the accounts in the minor units of the base currency, exactly as {@link Balance#normalize()}
+     * computes them
+     */
+    private static long[] normalized(List<Account> accounts) {
+        Map<Currency, Double> rates = new HashMap<>();
+        long[] balances = new long[accounts.size()];
+        for (int i = 0; i < balances.length; i++) {
+            Balance balance = accounts.get(i).getBalance();
+            Currency currency = balance.currency();
+            if (currency.getNumericCode() == Configuration.BASE_CURRENCY.getNumericCode()) {
+                balances[i] = balance.amount();
+                continue;
+            }
+            double rate = rates.computeIfAbsent(currency, c -> Bank.RATES.get(c, Configuration.BASE_CURRENCY));
+            balances[i] = Money.convert(balance.amount(), currency, Configuration.BASE_CURRENCY, rate, Configuration.MONEY_ROUNDING);
+        }
+        return balances;
+    }
+
+    /**
+     * @return sort keys of the accounts, the negated balance shifted up, the position of the account in the low bits,
+     * null if some balance is too large for that
+     */
+    private static long[] pack(long[] balances) {
+        int bits = positionBits(balances.length);
+        long limit = 1L << (62 - bits);
+        long[] keys = new long[balances.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (balances[i] >= limit || balances[i] <= -limit) return null;
+            keys[i] = (-balances[i] << bits) | i;
+        }
+        return keys;
+    }
+
+    private static List<Account> fallback(List<Account> accounts, long[] balances) {
+        Integer[] order = new Integer[accounts.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(balances[b], balances[a]));
+        List<Account> ordered = new ArrayList<>(order.length);
+        for (int i : order) ordered.add(accounts.get(i));
+        return ordered;
+    }
+
+    private static List<Account> materialize(List<Account> accounts, long[] keys, int length) {
+        long mask = (1L << positionBits(accounts.size())) - 1;
+        List<Account> ordered = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) ordered.add(accounts.get((int) (keys[i] & mask)));
+        return ordered;
+    }
+
+    /**
+     * @return how many low bits of a sort key hold the position of the account
+     */
+    private static int positionBits(int count) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, count - 1));
+    }
+}
@@ -0,0 +1,160 @@
+package bohac.entity.account;
+
+import bohac.Configuration;
+import bohac.entity.User;
+import bohac.exceptions.PaymentRejectedException;
+import bohac.transaction.TransactionId;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Remembers the outcomes of the payments submitted with a client idempotency key, so that a retried submission is
+ * answered with the outcome of the original one instead of being posted again. The keys are scoped by the user who
+ * submits them.
+ * <p>
+ * A key is remembered for {@link Configuration#IDEMPOTENCY_WINDOW} since its first submission, and at most
+ * {@link Configuration#IDEMPOTENCY_CAPACITY} keys are remembered, the oldest ones are forgotten first. The keys are
+ * held in a hash map for the lookups and in a queue in the order of their submission - which is also the order they
+ * expire in - so both a lookup and forgetting a key take constant time. A retry that comes while the original is still
+ * being posted waits for its outcome.
+ * <p>
+ * A payment that provably posted nothing - one that's declined, or turned down with a
+ * {@link PaymentRejectedException} - is forgotten, it can be retried. A payment that fails with any other exception
+ * may have posted a leg already, so its failure is remembered and the retries are answered with it.
+ * <p>
+ * The keys are held in memory only, a restart forgets them.
+ */
+public final class IdempotencyIndex {
+    /**
+     * Outcome of a submitted payment
+     *
+     * @param transactionId id of the transfer, see {@link TransactionId}, null unless the payment is completed
+     * @param result        outcome of the payment
+     * @param replayed      whether this is the outcome of an earlier submission with the same key
+     */
+    public record Receipt(UUID transactionId, TransferEngine.Result result, boolean replayed) {
+        public boolean completed() {
+            return result == TransferEngine.Result.COMPLETED;
+        }
+    }
+
+    /**
+     * What a key was used for, a retry has to match it
+     */
+    private record Request(UUID sender, UUID receiver, long amount) {
+    }
+
+    private record Entry(String key, Request request, CompletableFuture<Receipt> receipt, long expires) {
+    }
+
+    private final long windowNanos;
+    private final int capacity;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder(), replayed = new LongAdder(), conflicts = new LongAdder();
+
+    /**
+     * @param window   how long a key is remembered
+     * @param capacity how many keys are remembered at most
+     */
+    public IdempotencyIndex(Duration window, int capacity) {
+        this.windowNanos = window.toNanos();
+        this.capacity = capacity;
+    }
+
+    /**
+     * Submits a payment, unless one with the same key has been submitted by the user already
+     *
+     * @param user     user authorizing the payment, the key is scoped by them
+     * @param key      idempotency key, null to post the payment in any case
+     * @param sender   sender account
+     * @param receiver receiver account
+     * @param amount   amount in the minor units of the sender account currency
+     * @param payment  posts the payment with the given transfer id, called again for a key only if the payment of the
+     *                 earlier submission posted nothing
+     * @return the outcome of the payment, or of the original one if the key has been seen. A key used for a different
+     * payment before ends with {@link TransferEngine.Result#KEY_REUSED}.
+     */
+    public CompletableFuture<Receipt> submit(User user, String key, Account sender, Account receiver, long amount,
+                                             Function<UUID, CompletableFuture<TransferEngine.Result>> payment) {
+        submitted.increment();
+        if (key == null) return post(payment);
+
+        long now = System.nanoTime();
+        evict(now);
+        Request request = new Request(sender.getId(), receiver.getId(), amount);
+        Entry entry = new Entry(user.getId() + "/" + key, request, new CompletableFuture<>(), now + windowNanos);
+        Entry original;
+        while ((original = entries.putIfAbsent(entry.key(), entry)) != null) {
+            if (original.expires() - now > 0) {
+                if (!original.request().equals(request)) {
+                    conflicts.increment();
+                    return CompletableFuture.completedFuture(new Receipt(null, TransferEngine.Result.KEY_REUSED, false));
+                }
+                replayed.increment();
+                return original.receipt().thenApply(receipt ->
+                        new Receipt(receipt.transactionId(), receipt.result(), true));
+            }
+            // Expired, but not evicted yet
+            entries.remove(entry.key(), original);
+        }
+        order.add(entry);
+        queued.incrementAndGet();
+
+        post(payment).whenComplete((receipt, e) -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause == null ? !receipt.completed() : cause instanceof PaymentRejectedException)
+                entries.remove(entry.key(), entry);
+            if (e == null) entry.receipt().complete(receipt);
+            else entry.receipt().completeExceptionally(cause);
+        });
+        return entry.receipt();
+    }
+
+    /**
+     * @return how many keys are remembered
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d payments submitted, %d replayed, %d keys reused, %d keys remembered", submitted.sum(),
+                replayed.sum(), conflicts.sum(), entries.size());
+    }
+
+    private static CompletableFuture<Receipt> post(Function<UUID, CompletableFuture<TransferEngine.Result>> payment) {
+        UUID id = TransactionId.next();
+        try {
+            return payment.apply(id).thenApply(result ->
+                    new Receipt(result == TransferEngine.Result.COMPLETED ? id : null, result, false));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Forgets the expired keys and the oldest keys over the capacity
+     */
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = order.peek()) != null && (oldest.expires() - now <= 0 || queued.get() >= capacity)) {
+            // Another thread may have taken the head in the meantime, evicting the next one early is harmless
+            if ((oldest = order.poll()) == null) return;
+            queued.decrementAndGet();
+            entries.remove(oldest.key(), oldest);
+        }
+    }
+}
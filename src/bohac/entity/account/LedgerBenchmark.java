@@ -0,0 +1,118 @@
+package bohac.entity.account;
+
+import bohac.Bank;
+import bohac.Configuration;
+import bohac.auditlog.AuditLogFile;
+import bohac.entity.User;
+import bohac.storage.UserPreferences;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line tool, measures how many payments per second the {@link LedgerExecutor} posts for an increasing number
+ * of partitions, against the locking {@link Bank#TRANSFERS} with as many threads as there are processors. The
+ * payments go between random in-memory accounts, the persistence does nothing. After every run it checks that the
+ * balances together with the collected fees add up to the initial balances.
+ * <p>
+ * Usage: {@code LedgerBenchmark [accounts] [payments] [max partitions]}, the defaults are 4 096, 2 000 000 and twice
+ * the number of processors
+ */
+public class LedgerBenchmark {
+    private static final Currency CURRENCY = Currency.getInstance("CZK");
+    private static final long INITIAL_BALANCE = 1_000_000_000_000L;
+
+    private LedgerBenchmark() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int payments = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPartitions = args.length > 2 ? Integer.parseInt(args[2]) : 2 * threads;
+        Configuration.TRANSACTION_SEGMENTS = false;
+        Configuration.JOURNALING = false;
+        User user = new User(UUID.randomUUID(), "benchmark", "Benchmark", "Test", "benchmark@localhost", "",
+                LocalDateTime.now(), new UserPreferences(), false);
+
+        System.out.printf("%d accounts, %d payments, %d submitting threads%n", count, payments, threads);
+        List<Account> accounts = accounts(count);
+        double seconds = run(accounts, threads, payments, (sender, receiver, amount) -> Bank.TRANSFERS.transfer(sender, receiver, amount, user));
+        check(accounts);
+        System.out.printf("%-14s %12.0f payments/s%n", "locks", payments / seconds);
+
+        for (int partitions = 1; partitions <= maxPartitions; partitions *= 2) {
+            accounts = accounts(count);
+            LedgerExecutor ledger = LedgerExecutor.start(partitions, Configuration.LEDGER_QUEUE_CAPACITY,
+                    Configuration.LEDGER_BATCH_SIZE, changed -> {
+                    });
+            long start = System.nanoTime();
+            run(accounts, threads, payments, (sender, receiver, amount) -> ledger.submit(sender, receiver, amount, user));
+            // Waits for the queued payments
+            ledger.close();
+            seconds = (System.nanoTime() - start) / 1e9;
+            if (ledger.pending() != 0) throw new AssertionError("Pending payments left: " + ledger);
+            check(accounts);
+            System.out.printf("%-14s %12.0f payments/s   %s%n", partitions + " partitions", payments / seconds, ledger);
+        }
+    }
+
+    private static List<Account> accounts(int count) {
+        List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID id = UUID.randomUUID();
+            accounts.add(new Account(id, Account.Type.CHECKING_ACCOUNT, CURRENCY, AuditLogFile.create(id),
+                    new ArrayList<>(), new HashSet<>(), INITIAL_BALANCE));
+        }
+        return accounts;
+    }
+
+    private interface Payment {
+        void pay(Account sender, Account receiver, long amount);
+    }
+
+    /**
+     * Submits the payments between random distinct accounts from all the threads
+     *
+     * @return how many seconds it took
+     */
+    private static double run(List<Account> accounts, int threads, int payments, Payment payment) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int share = payments / threads + (t < payments % threads ? 1 : 0);
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < share; i++) {
+                    int sender = random.nextInt(accounts.size()), receiver = random.nextInt(accounts.size() - 1);
+                    payment.pay(accounts.get(sender), accounts.get(receiver >= sender ? receiver + 1 : receiver),
+                            1 + random.nextInt(100_000));
+                }
+            });
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.MINUTES)) throw new AssertionError("The payments didn't finish in time");
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static void check(List<Account> accounts) {
+        long fee = Balance.convert(Configuration.TRANSACTION_FEE.amount(), Configuration.TRANSACTION_FEE.currency(), CURRENCY);
+        long total = 0, legs = 0;
+        for (Account account : accounts) {
+            total += account.getBalance().amount();
+            legs += account.getTransactionHistory().size();
+        }
+        long expected = INITIAL_BALANCE * accounts.size() - fee * (legs / 2);
+        if (legs % 2 != 0 || total != expected)
+            throw new AssertionError(String.format("Money not conserved: %d, expected %d", total, expected));
+    }
+}
@@ -0,0 +1,398 @@
+package bohac.entity.account;
+
+import bohac.Bank;
+import bohac.Configuration;
+import bohac.entity.User;
+import bohac.exceptions.PaymentRejectedException;
+import bohac.storage.AccountList;
+import bohac.transaction.IncomingTransaction;
+import bohac.transaction.OutgoingTransaction;
+import bohac.transaction.PendingCredit;
+import bohac.transaction.TransactionId;
+import bohac.util.Utils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Posts payments between accounts without contending for the locks, the alternative to the {@link TransferEngine}.
+ * The accounts are partitioned by their id, every partition has a single worker thread, which is the only one to post
+ * payments from the accounts of its partition. The workers are fed by bounded array queues.
+ * <p>
+ * A payment is handled by the partition of the sender. It checks the funds and posts the outgoing leg, if the receiver
+ * is in the same partition the incoming leg is posted right away. Otherwise the payment stays pending - the sender is
+ * debited, but the receiver isn't credited yet - until the partition of the receiver posts the credit it is sent. The
+ * incoming leg is persisted with the outgoing one as a {@link PendingCredit} of the sender, so a payment interrupted
+ * by a crash is credited by {@link #recover(AccountList)} on the next start. Once the receiver is credited, the
+ * partition of the sender is sent back the settlement of the pending credit. A partition thus never posts to the
+ * accounts of another one.
+ * <p>
+ * A worker takes up to {@link Configuration#LEDGER_BATCH_SIZE} messages at once, and hands all the accounts the batch
+ * changed to the persistence together. Only then the messages of the batch are sent out and the results are completed.
+ * <p>
+ * Every partition takes in at most {@link Configuration#LEDGER_QUEUE_CAPACITY} payments, a payment is counted until
+ * its credit is settled. As the credits and the settlements are counted with their payments, no queue can fill up and
+ * the workers never wait for each other.
+ * <p>
+ * The accounts are still changed outside the ledger too (deposits, standing orders), and the snapshots and the journal
+ * checkpoints read them on other threads. Every leg is therefore posted under the stripe of its account in the
+ * {@link TransferEngine}, so none of them sees a leg posted halfway. As a partition only takes the stripes of its own
+ * accounts, one at a time, the workers don't contend for them with each other.
+ * <p>
+ * A message that fails completes its payment exceptionally, the worker keeps running. A failed persistence doesn't fail
+ * the payments of the batch - they're posted already - the changed accounts are handed to the persistence again with
+ * the next batch, or after {@link #PERSISTENCE_RETRY} if no other message comes.
+ */
+public final class LedgerExecutor implements AutoCloseable {
+    private sealed interface Message permits Payment, Credit, Settle, Stop {
+    }
+
+    /**
+     * A payment submitted to the partition of the sender
+     *
+     * @param id     transfer id, given to both legs
+     * @param debit  amount taken from the sender, the fee included, in the minor units of the sender account currency
+     * @param credit amount given to the receiver in the minor units of the receiver account currency
+     */
+    private record Payment(UUID id, Account sender, Account receiver, long amount, long debit, long credit, User user,
+                           Partition origin, CompletableFuture<TransferEngine.Result> result) implements Message {
+    }
+
+    /**
+     * The incoming leg of a payment, sent to the partition of the receiver
+     */
+    private record Credit(Payment payment) implements Message {
+    }
+
+    /**
+     * The settlement of the pending credit of a credited payment, sent back to the partition of the sender
+     */
+    private record Settle(Payment payment) implements Message {
+    }
+
+    private record Stop() implements Message {
+    }
+
+    /**
+     * How much older than its pending credit an incoming leg can be, see {@link #recover(AccountList)}
+     */
+    private static final Duration RECOVERY_MARGIN = Duration.ofMinutes(1);
+    /**
+     * How long a worker with accounts it failed to persist waits for a message before it tries again without one
+     */
+    private static final Duration PERSISTENCE_RETRY = Duration.ofSeconds(1);
+
+    private final Partition[] partitions;
+    private final int capacity, batchSize;
+    private final Consumer<Collection<Account>> persistence;
+    private final LongAdder completed = new LongAdder(), declined = new LongAdder(), pending = new LongAdder();
+    private final LongAdder batches = new LongAdder(), messages = new LongAdder(), persistenceFailures = new LongAdder();
+
+    private LedgerExecutor(int partitions, int capacity, int batchSize, Consumer<Collection<Account>> persistence) {
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.persistence = persistence;
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) this.partitions[i] = new Partition(i, (partitions + 1) * capacity);
+    }
+
+    /**
+     * Starts the partition workers. Acts as a static factory method also.
+     *
+     * @param partitions  how many partitions
+     * @param capacity    how many payments a partition takes in at most
+     * @param batchSize   how many messages a worker takes at once
+     * @param persistence called by the workers with the accounts changed by a batch
+     * @return the started {@link LedgerExecutor}
+     */
+    public static LedgerExecutor start(int partitions, int capacity, int batchSize, Consumer<Collection<Account>> persistence) {
+        LedgerExecutor executor = new LedgerExecutor(partitions, capacity, batchSize, persistence);
+        for (Partition partition : executor.partitions) partition.worker.start();
+        return executor;
+    }
+
+    /**
+     * Submits a payment, the sender also pays the {@link Configuration#TRANSACTION_FEE}. Waits if the partition of the
+     * sender is full.
+     *
+     * @param sender   sender account
+     * @param receiver receiver account
+     * @param amount   amount in the minor units of the sender account currency
+     * @param user     user authorizing the payment
+     * @return the outcome, completed once both legs are posted and handed to the persistence
+     */
+    public CompletableFuture<TransferEngine.Result> submit(Account sender, Account receiver, long amount, User user) {
+        return submit(TransactionId.next(), sender, receiver, amount, user);
+    }
+
+    /**
+     * Submits a payment, the sender also pays the {@link Configuration#TRANSACTION_FEE}. Waits if the partition of the
+     * sender is full.
+     *
+     * @param id       transfer id, given to both legs
+     * @param sender   sender account
+     * @param receiver receiver account
+     * @param amount   amount in the minor units of the sender account currency
+     * @param user     user authorizing the payment
+     * @return the outcome, completed once both legs are posted and handed to the persistence
+     * @throws PaymentRejectedException if the amounts can't be converted, nothing is submitted
+     */
+    public CompletableFuture<TransferEngine.Result> submit(UUID id, Account sender, Account receiver, long amount, User user) {
+        if (sender.equals(receiver)) return CompletableFuture.completedFuture(TransferEngine.Result.SAME_ACCOUNT);
+        if (amount <= 0) return CompletableFuture.completedFuture(TransferEngine.Result.INVALID_AMOUNT);
+        Currency currency = sender.getCurrency();
+        long fee, credit;
+        try {
+            fee = Balance.convert(Configuration.TRANSACTION_FEE.amount(), Configuration.TRANSACTION_FEE.currency(), currency);
+            credit = Balance.convert(amount, currency, receiver.getCurrency());
+        } catch (RuntimeException e) {
+            throw new PaymentRejectedException(e);
+        }
+
+        Partition partition = partition(sender);
+        Payment payment = new Payment(id, sender, receiver, amount, Money.add(amount, fee), credit, user, partition,
+                new CompletableFuture<>());
+        partition.permits.acquireUninterruptibly();
+        partition.send(payment);
+        return payment.result();
+    }
+
+    /**
+     * Credits the receivers of the payments interrupted by a crash - the pending credits persisted with the senders
+     * whose incoming leg is missing in the history of the receiver - and settles them. Called once the accounts are
+     * loaded and before any payments are posted.
+     *
+     * @param accounts all the accounts
+     * @return how many receivers were credited
+     */
+    public static int recover(AccountList accounts) {
+        int credited = 0;
+        for (Account sender : accounts) {
+            for (PendingCredit credit : sender.getPendingCredits()) {
+                Account receiver = accounts.getByID(credit.receiver()).orElse(null);
+                if (receiver == null) {
+                    Utils.printDebugMessage(String.format("Pending credit %s has no receiver %s", credit.id(), credit.receiver()));
+                    continue;
+                }
+                // The incoming leg is posted after the outgoing one, a margin is left for the clock being adjusted
+                if (!receiver.hasTransaction(credit.id(), credit.dateTime().minus(RECOVERY_MARGIN))) {
+                    Bank.TRANSFERS.locked(receiver, () -> {
+                        receiver.post(new IncomingTransaction(credit.id(), sender.getId(), credit.dateTime(),
+                                credit.amount(), credit.currency()), credit.credit());
+                        return null;
+                    });
+                    receiver.save();
+                    credited++;
+                }
+                Bank.TRANSFERS.locked(sender, () -> {
+                    sender.settleCredit(credit.id());
+                    return null;
+                });
+                sender.save();
+            }
+        }
+        if (credited > 0) Utils.printDebugMessage(String.format("Ledger recovery credited %d payments", credited));
+        return credited;
+    }
+
+    /**
+     * @return how many payments have the sender debited, but the receiver not credited yet
+     */
+    public long pending() {
+        return pending.sum();
+    }
+
+    /**
+     * Waits for all the submitted payments to complete and stops the workers
+     */
+    @Override
+    public void close() {
+        for (Partition partition : partitions) partition.permits.acquireUninterruptibly(capacity);
+        for (Partition partition : partitions) partition.send(new Stop());
+        for (Partition partition : partitions) {
+            try {
+                partition.worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        long batches = this.batches.sum();
+        return String.format("%d partitions, %d payments completed, %d declined, %d pending, %.1f messages per batch, "
+                        + "%d failed persistence attempts", partitions.length, completed.sum(), declined.sum(), pending.sum(),
+                batches == 0 ? 0.0 : (double) messages.sum() / batches, persistenceFailures.sum());
+    }
+
+    private Partition partition(Account account) {
+        return partitions[Math.floorMod(TransferEngine.hash(account.getId()), partitions.length)];
+    }
+
+    /**
+     * A single partition, its queue and its worker
+     */
+    private final class Partition {
+        private final BlockingQueue<Message> queue;
+        private final Semaphore permits = new Semaphore(capacity);
+        private final Thread worker;
+        private final List<Message> batch = new ArrayList<>(batchSize);
+        /**
+         * Accounts changed by the batch, and the ones the persistence of the earlier batches failed for
+         */
+        private final Set<Account> changed = new LinkedHashSet<>();
+        private final List<Message> outbox = new ArrayList<>();
+        private final List<Payment> done = new ArrayList<>();
+
+        private Partition(int index, int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.worker = new Thread(this::run, "ledger-" + index);
+            this.worker.setDaemon(true);
+        }
+
+        private void send(Message message) {
+            try {
+                queue.put(message);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void run() {
+            boolean stopped = false;
+            while (!stopped) {
+                try {
+                    if (changed.isEmpty()) batch.add(queue.take());
+                    else {
+                        Message message = queue.poll(PERSISTENCE_RETRY.toMillis(), TimeUnit.MILLISECONDS);
+                        if (message != null) batch.add(message);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, batchSize - 1);
+                for (Message message : batch) {
+                    try {
+                        if (message instanceof Payment payment) debit(payment);
+                        else if (message instanceof Credit credit) credit(credit.payment());
+                        else if (message instanceof Settle settle) settle(settle.payment());
+                        else stopped = true;
+                    } catch (RuntimeException e) {
+                        fail(message, e);
+                    }
+                }
+                boolean persisted = true;
+                try {
+                    if (!changed.isEmpty()) persistence.accept(changed);
+                } catch (RuntimeException e) {
+                    // Not a failure of the payments, the accounts are kept to be persisted again
+                    persistenceFailures.increment();
+                    Utils.printDebugMessage(String.format("Ledger persistence of %d accounts failed, retrying: %s", changed.size(), e));
+                    persisted = false;
+                }
+                for (Message message : outbox) {
+                    if (message instanceof Credit credit) partition(credit.payment().receiver()).send(credit);
+                    else if (message instanceof Settle settle) settle.payment().origin().send(settle);
+                }
+                for (Payment payment : done) payment.result().complete(TransferEngine.Result.COMPLETED);
+                batches.increment();
+                messages.add(batch.size());
+                batch.clear();
+                if (persisted) changed.clear();
+                outbox.clear();
+                done.clear();
+            }
+            if (!changed.isEmpty())
+                Utils.printDebugMessage(String.format("Ledger stopped with %d accounts not persisted", changed.size()));
+        }
+
+        /**
+         * Completes the payment of a failed message exceptionally and gives back its permit. A failed settlement only
+         * gives back the permit, the payment is completed already - the pending credit is settled by
+         * {@link #recover(AccountList)}.
+         */
+        private void fail(Message message, RuntimeException e) {
+            Payment payment = message instanceof Credit credit ? credit.payment()
+                    : message instanceof Settle settle ? settle.payment() : (Payment) message;
+            Utils.printDebugMessage(String.format("Ledger payment %s failed: %s", payment.id(), e));
+            if (message instanceof Credit && payment.origin() != this) pending.decrement();
+            if (!(message instanceof Settle)) payment.result().completeExceptionally(e);
+            payment.origin().permits.release();
+        }
+
+        private void debit(Payment payment) {
+            Account sender = payment.sender(), receiver = payment.receiver();
+            PendingCredit credit = new PendingCredit(payment.id(), receiver.getId(), payment.amount(),
+                    sender.getCurrency(), payment.credit(), receiver.getCurrency(), LocalDateTime.now());
+            boolean debited = Bank.TRANSFERS.locked(sender, () -> {
+                if (Money.compare(sender.getBalance().amount(), payment.debit()) < 0) return false;
+                sender.post(new OutgoingTransaction(payment.id(), payment.user(), receiver, payment.amount(),
+                        sender.getCurrency()), -payment.debit(), credit);
+                return true;
+            });
+            if (!debited) {
+                declined.increment();
+                payment.result().complete(TransferEngine.Result.INSUFFICIENT_FUNDS);
+                permits.release();
+                return;
+            }
+            changed.add(sender);
+            if (partition(payment.receiver()) == this) {
+                credit(payment);
+                return;
+            }
+            pending.increment();
+            outbox.add(new Credit(payment));
+        }
+
+        /**
+         * Posts the incoming leg and has the partition of the sender settle its pending credit. A settlement lost by
+         * a crash is found out by {@link #recover(AccountList)}.
+         */
+        private void credit(Payment payment) {
+            Account receiver = payment.receiver(), sender = payment.sender();
+            Bank.TRANSFERS.locked(receiver, () -> {
+                receiver.post(new IncomingTransaction(payment.id(), sender, payment.amount(), sender.getCurrency()),
+                        payment.credit());
+                return null;
+            });
+            changed.add(receiver);
+            completed.increment();
+            done.add(payment);
+            if (payment.origin() == this) settle(payment);
+            else {
+                pending.decrement();
+                outbox.add(new Settle(payment));
+            }
+        }
+
+        /**
+         * Settles the pending credit of a credited payment and gives back the permit of the payment
+         */
+        private void settle(Payment payment) {
+            Account sender = payment.sender();
+            Bank.TRANSFERS.locked(sender, () -> {
+                sender.settleCredit(payment.id());
+                return null;
+            });
+            changed.add(sender);
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package bohac.entity.account;
+
+import bohac.Configuration;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+
+/**
+ * Fixed-point money arithmetic. Amounts are {@code long} counts of the minor unit of their currency (i.e. cents), as
+ * many decimal places as {@link Currency#getDefaultFractionDigits()} says. The arithmetic doesn't allocate and doesn't
+ * round anywhere except for the currency conversion, which rounds explicitly.
+ * <p>
+ * Decimal amounts (user input, the JSON files) are converted by {@link #of(BigDecimal, Currency, RoundingMode)}, the
+ * {@code float} amounts stored by the older versions by {@link #fromFloat(float, Currency)}.
+ */
+public final class Money {
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private Money() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param currency currency
+     * @return how many decimal places the minor unit of the currency has
+     */
+    public static int digits(Currency currency) {
+        return Math.max(0, currency.getDefaultFractionDigits());
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    public static int compare(long a, long b) {
+        return Long.compare(a, b);
+    }
+
+    /**
+     * Converts an amount to another currency
+     *
+     * @param amount amount in the minor units of the {@code from} currency
+     * @param from   from currency
+     * @param to     to currency
+     * @param rate   how much of the {@code to} currency is one unit of the {@code from} currency
+     * @param mode   how the converted amount is rounded to the minor unit of the {@code to} currency
+     * @return the amount in the minor units of the {@code to} currency
+     * @throws ArithmeticException if the amount doesn't fit, or it needs rounding and the mode is
+     *                             {@link RoundingMode#UNNECESSARY}
+     */
+    public static long convert(long amount, Currency from, Currency to, double rate, RoundingMode mode) {
+        if (from == to) return amount;
+        int shift = digits(to) - digits(from);
+        double value = amount * rate;
+        value = shift >= 0 ? value * POWERS_OF_TEN[shift] : value / POWERS_OF_TEN[-shift];
+        return round(value, mode);
+    }
+
+    /**
+     * @param value value
+     * @param mode  rounding mode
+     * @return the value rounded to a whole number
+     * @throws ArithmeticException if the value doesn't fit, or it needs rounding and the mode is
+     *                             {@link RoundingMode#UNNECESSARY}
+     */
+    public static long round(double value, RoundingMode mode) {
+        double floor = Math.floor(value), fraction = value - floor;
+        double rounded = switch (mode) {
+            case FLOOR -> floor;
+            case CEILING -> Math.ceil(value);
+            case DOWN -> value < 0 ? Math.ceil(value) : floor;
+            case UP -> value < 0 ? floor : Math.ceil(value);
+            case HALF_UP -> fraction == 0.5 ? (value < 0 ? floor : floor + 1) : Math.rint(value);
+            case HALF_DOWN -> fraction == 0.5 ? (value < 0 ? floor + 1 : floor) : Math.rint(value);
+            case HALF_EVEN -> Math.rint(value);
+            case UNNECESSARY -> {
+                if (fraction != 0) throw new ArithmeticException("Rounding necessary");
+                yield value;
+            }
+        };
+        if (Double.isNaN(rounded) || rounded >= 0x1p63 || rounded < -0x1p63)
+            throw new ArithmeticException("Amount out of range");
+        return (long) rounded;
+    }
+
+    /**
+     * @param amount   decimal amount
+     * @param currency currency
+     * @param mode     how the amount is rounded to the minor unit
+     * @return the amount in the minor units
+     * @throws ArithmeticException if the amount doesn't fit, or it needs rounding and the mode is
+     *                             {@link RoundingMode#UNNECESSARY}
+     */
+    public static long of(BigDecimal amount, Currency currency, RoundingMode mode) {
+        return amount.setScale(digits(currency), mode).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Migrates a {@code float} amount stored by the older versions. The float is taken as the shortest decimal it
+     * prints as (that's what the user saw), which is then rounded to the minor unit by
+     * {@link Configuration#MONEY_ROUNDING}.
+     *
+     * @param amount   {@code float} amount
+     * @param currency currency
+     * @return the amount in the minor units
+     */
+    public static long fromFloat(float amount, Currency currency) {
+        return of(new BigDecimal(Float.toString(amount)), currency, Configuration.MONEY_ROUNDING);
+    }
+
+    /**
+     * @param amount   amount in the minor units
+     * @param currency currency
+     * @return the decimal amount
+     */
+    public static BigDecimal toDecimal(long amount, Currency currency) {
+        return BigDecimal.valueOf(amount, digits(currency));
+    }
+
+    /**
+     * @param amount   amount in the minor units
+     * @param currency currency
+     * @return the amount formatted with all the decimal places of the currency, in the default locale
+     */
+    public static String format(long amount, Currency currency) {
+        return String.format("%." + digits(currency) + "f", toDecimal(amount, currency));
+    }
+}
@@ -0,0 +1,147 @@
+package bohac.entity.account;
+
+import bohac.Configuration;
+import bohac.entity.User;
+import bohac.exceptions.PaymentRejectedException;
+import bohac.transaction.IncomingTransaction;
+import bohac.transaction.OutgoingTransaction;
+import bohac.transaction.TransactionId;
+
+import java.util.Currency;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Posts payments between accounts, safe to be used from any number of threads at once. Every account maps to one of a
+ * fixed number of lock stripes by its id. A payment holds the stripes of both accounts while it checks the funds and
+ * posts both legs, so no other payment, nor a snapshot of either account, sees it half done.
+ * <p>
+ * The stripes are always acquired in the ascending order of their index, which is derived from the account ids. Two
+ * payments can't wait for each other this way, even when they go in the opposite directions or when different
+ * accounts share a stripe. The exchange rates are looked up before any lock is taken.
+ */
+public final class TransferEngine {
+    /**
+     * Outcome of a payment, {@code KEY_REUSED} if the idempotency key has been used for a different payment already -
+     * see {@link IdempotencyIndex}
+     */
+    public enum Result {
+        COMPLETED, INSUFFICIENT_FUNDS, SAME_ACCOUNT, INVALID_AMOUNT, KEY_REUSED
+    }
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @param stripes how many lock stripes, rounded up to a power of two
+     */
+    public TransferEngine(int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) this.stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Moves money from one account to another, the sender also pays the {@link Configuration#TRANSACTION_FEE}
+     *
+     * @param sender   sender account
+     * @param receiver receiver account
+     * @param amount   amount in the minor units of the sender account currency
+     * @param user     user authorizing the payment
+     * @return the outcome, nothing is changed unless it's {@link Result#COMPLETED}
+     */
+    public Result transfer(Account sender, Account receiver, long amount, User user) {
+        return transfer(TransactionId.next(), sender, receiver, amount, user);
+    }
+
+    /**
+     * Moves money from one account to another, the sender also pays the {@link Configuration#TRANSACTION_FEE}
+     *
+     * @param id       transfer id, given to both legs
+     * @param sender   sender account
+     * @param receiver receiver account
+     * @param amount   amount in the minor units of the sender account currency
+     * @param user     user authorizing the payment
+     * @return the outcome, nothing is changed unless it's {@link Result#COMPLETED}
+     * @throws PaymentRejectedException if the amounts can't be converted, nothing is changed
+     */
+    public Result transfer(UUID id, Account sender, Account receiver, long amount, User user) {
+        if (sender.equals(receiver)) return Result.SAME_ACCOUNT;
+        if (amount <= 0) return Result.INVALID_AMOUNT;
+        Currency currency = sender.getCurrency();
+        long debit, credit;
+        try {
+            long fee = Balance.convert(Configuration.TRANSACTION_FEE.amount(), Configuration.TRANSACTION_FEE.currency(), currency);
+            debit = Money.add(amount, fee);
+            credit = Balance.convert(amount, currency, receiver.getCurrency());
+        } catch (RuntimeException e) {
+            throw new PaymentRejectedException(e);
+        }
+
+        return locked(sender.getId(), receiver.getId(), () -> {
+            if (Money.compare(sender.getBalance().amount(), debit) < 0) return Result.INSUFFICIENT_FUNDS;
+            receiver.post(new IncomingTransaction(id, sender, amount, currency), credit);
+            sender.post(new OutgoingTransaction(id, user, receiver, amount, currency), -debit);
+            return Result.COMPLETED;
+        });
+    }
+
+    /**
+     * Runs an action while holding the stripe of an account, i.e. to read its balance and history consistently
+     *
+     * @param account account
+     * @param action  action
+     * @return result of the action
+     */
+    public <T> T locked(Account account, Supplier<T> action) {
+        ReentrantLock lock = stripe(account.getId());
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <T> T locked(UUID first, UUID second, Supplier<T> action) {
+        ReentrantLock a = stripe(first), b = stripe(second);
+        if (a == b) {
+            a.lock();
+            try {
+                return action.get();
+            } finally {
+                a.unlock();
+            }
+        }
+        ReentrantLock lower = index(first) < index(second) ? a : b, upper = lower == a ? b : a;
+        lower.lock();
+        try {
+            upper.lock();
+            try {
+                return action.get();
+            } finally {
+                upper.unlock();
+            }
+        } finally {
+            lower.unlock();
+        }
+    }
+
+    private ReentrantLock stripe(UUID id) {
+        return stripes[index(id)];
+    }
+
+    private int index(UUID id) {
+        return hash(id) & (stripes.length - 1);
+    }
+
+    /**
+     * @return hash of an account id spread over all the bits, the lock stripes and the {@link LedgerExecutor}
+     * partitions are picked by it
+     */
+    static int hash(UUID id) {
+        long bits = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        return hash ^ (hash >>> 16);
+    }
+}
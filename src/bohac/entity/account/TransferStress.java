@@ -0,0 +1,121 @@
+package bohac.entity.account;
+
+import bohac.Bank;
+import bohac.Configuration;
+import bohac.auditlog.AuditLogFile;
+import bohac.entity.User;
+import bohac.storage.EntityFormat;
+import bohac.storage.UserPreferences;
+import bohac.transaction.IncomingTransaction;
+import bohac.transaction.Transaction;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command line tool, runs random payments between in-memory accounts from many threads at once through
+ * {@link Bank#TRANSFERS}, while another thread keeps serializing the accounts. Afterwards it checks that no money was
+ * created or lost - the balances together with the collected fees add up to the initial balances - that no balance
+ * went below zero and that every balance matches the transaction history of its account. A deadlock shows up as a
+ * timeout.
+ * <p>
+ * Usage: {@code TransferStress [threads] [accounts] [payments per thread] [lock stripes]}, the defaults are 16, 64,
+ * 50 000 and {@link Configuration#TRANSFER_LOCK_STRIPES}. Fewer accounts mean more contention.
+ */
+public class TransferStress {
+    private static final Currency CURRENCY = Currency.getInstance("CZK");
+    private static final long INITIAL_BALANCE = 1_000_000_000;
+
+    private TransferStress() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int payments = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+        if (args.length > 3) Configuration.TRANSFER_LOCK_STRIPES = Integer.parseInt(args[3]);
+        Configuration.TRANSACTION_SEGMENTS = false;
+        Configuration.JOURNALING = false;
+
+        User user = new User(UUID.randomUUID(), "stress", "Stress", "Test", "stress@localhost", "",
+                LocalDateTime.now(), new UserPreferences(), false);
+        List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID id = UUID.randomUUID();
+            accounts.add(new Account(id, Account.Type.CHECKING_ACCOUNT, CURRENCY, AuditLogFile.create(id),
+                    new ArrayList<>(), new HashSet<>(), INITIAL_BALANCE));
+        }
+        long fee = Balance.convert(Configuration.TRANSACTION_FEE.amount(), Configuration.TRANSACTION_FEE.currency(), CURRENCY);
+
+        LongAdder completed = new LongAdder(), declined = new LongAdder(), snapshots = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread snapshotter = new Thread(() -> {
+            while (running.get()) {
+                accounts.get(ThreadLocalRandom.current().nextInt(count)).encode(EntityFormat.JSON);
+                snapshots.increment();
+            }
+        }, "stress-snapshots");
+        snapshotter.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < payments; i++) {
+                    Account sender = accounts.get(random.nextInt(count)), receiver = accounts.get(random.nextInt(count));
+                    long amount = 1 + random.nextLong(INITIAL_BALANCE / 1000);
+                    switch (Bank.TRANSFERS.transfer(sender, receiver, amount, user)) {
+                        case COMPLETED -> completed.increment();
+                        case INSUFFICIENT_FUNDS -> declined.increment();
+                        default -> {
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.MINUTES))
+            throw new AssertionError("The payments didn't finish in time, deadlock?");
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        snapshotter.join();
+
+        long total = 0;
+        int legs = 0;
+        for (Account account : accounts) {
+            long balance = account.getBalance().amount();
+            if (balance < 0) throw new AssertionError(String.format("Account %s went below zero: %d", account.getId(), balance));
+            long expected = INITIAL_BALANCE;
+            for (Transaction transaction : account.getTransactionHistory()) {
+                expected += transaction instanceof IncomingTransaction ? transaction.getAmount() : -transaction.getAmount() - fee;
+            }
+            if (balance != expected)
+                throw new AssertionError(String.format("Account %s balance %d doesn't match its history %d", account.getId(), balance, expected));
+            total += balance;
+            legs += account.getTransactionHistory().size();
+        }
+        if (legs != 2 * completed.sum())
+            throw new AssertionError(String.format("%d payments completed, but %d legs posted", completed.sum(), legs));
+        long expected = INITIAL_BALANCE * count - fee * completed.sum();
+        if (total != expected)
+            throw new AssertionError(String.format("Money not conserved: %d, expected %d", total, expected));
+
+        System.out.printf("%d threads, %d accounts, %d lock stripes%n", threads, count, Configuration.TRANSFER_LOCK_STRIPES);
+        System.out.printf("%d payments completed, %d declined, %d snapshots in %d ms (%.0f payments/s)%n",
+                completed.sum(), declined.sum(), snapshots.sum(), elapsed / 1_000_000,
+                (completed.sum() + declined.sum()) / (elapsed / 1e9));
+        System.out.println("Balances conserved");
+    }
+}
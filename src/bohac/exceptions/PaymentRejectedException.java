@@ -0,0 +1,11 @@
+package bohac.exceptions;
+
+/**
+ * This exception is thrown, when a payment is turned down before any of its legs is posted, i.e. when the exchange
+ * rates needed for it aren't available
+ */
+public class PaymentRejectedException extends RuntimeException {
+    public PaymentRejectedException(Throwable cause) {
+        super("Payment rejected: " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,39 @@
+package bohac.exchange;
+
+import bohac.util.Api;
+
+import java.time.Duration;
+import java.util.Currency;
+
+/**
+ * Exchange rates of the conversion API, the table of the base currency is fetched in the background, the currencies
+ * missing from the table are requested by pair
+ */
+public class HttpRateProvider extends RateTableProvider {
+    /**
+     * @param api      the conversion API
+     * @param base     base currency of the fetched table
+     * @param refresh  how often is the table fetched
+     * @param ttl      how long is a single requested rate used
+     * @param capacity how many single requested rates are cached at most
+     */
+    public HttpRateProvider(Api api, Currency base, Duration refresh, Duration ttl, int capacity) {
+        super(base, currency -> fetchTable(api, currency), refresh,
+                new RateCache(pair -> fetchRate(api, pair), ttl.toNanos(), capacity));
+    }
+
+    /**
+     * Loads the exchange rates of every currency against the base currency
+     */
+    private static RateTable fetchTable(Api api, Currency base) {
+        return RateTable.load(api.getJSON(String.format("/latest/currencies/%s.json", base.getCurrencyCode().toLowerCase())));
+    }
+
+    /**
+     * Loads a single exchange rate
+     */
+    private static double fetchRate(Api api, RateCache.Pair pair) {
+        String from = pair.from().getCurrencyCode().toLowerCase(), to = pair.to().getCurrencyCode().toLowerCase();
+        return api.getJSON(String.format("/latest/currencies/%s/%s.json", from, to)).getDouble(to);
+    }
+}
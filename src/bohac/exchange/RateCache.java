@@ -0,0 +1,177 @@
+package bohac.exchange;
+
+import bohac.util.Utils;
+
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Cache of the exchange rates by currency pair, so a conversion doesn't cost a request to the conversion API every
+ * time.
+ * <ul>
+ *     <li>A cached rate is used for the given time to live, then it's loaded again</li>
+ *     <li>The cache holds a bounded number of pairs, the least recently used one is evicted first</li>
+ *     <li>Concurrent misses of the same pair wait for a single load instead of each sending its own request</li>
+ *     <li>If the load of an expired rate fails, the stale rate is served rather than failing the conversion</li>
+ * </ul>
+ */
+public class RateCache {
+    /**
+     * Currency pair
+     *
+     * @param from from currency
+     * @param to   to currency
+     */
+    public record Pair(Currency from, Currency to) {
+        @Override
+        public String toString() {
+            return from.getCurrencyCode() + "/" + to.getCurrencyCode();
+        }
+    }
+
+    /**
+     * A cached rate
+     *
+     * @param rate     how much of the to currency is one unit of the from currency
+     * @param loadedAt {@link System#nanoTime()} of the load
+     */
+    private record Entry(double rate, long loadedAt) {
+    }
+
+    /**
+     * Statistics snapshot
+     *
+     * @param hits      lookups served from the cache
+     * @param misses    lookups of a pair that wasn't cached
+     * @param stale     lookups of a pair whose rate expired
+     * @param staleUsed expired rates served because their load failed
+     * @param loads     loads of a rate from the source
+     * @param coalesced lookups that waited for a load started by someone else
+     * @param evictions pairs evicted to keep the cache within the size
+     */
+    public record Stats(long hits, long misses, long stale, long staleUsed, long loads, long coalesced, long evictions) {
+        @Override
+        public String toString() {
+            long lookups = hits + misses + stale;
+            return String.format("%d lookups, %d hits (%.1f%%), %d misses, %d stale (%d served after a failed load), " +
+                            "%d loads, %d coalesced, %d evictions", lookups, hits, lookups == 0 ? 0 : hits * 100.0 / lookups,
+                    misses, stale, staleUsed, loads, coalesced, evictions);
+        }
+    }
+
+    private final ToDoubleFunction<Pair> loader;
+    private final long ttlNanos;
+    private final Map<Pair, Entry> entries;
+    private final Map<Pair, CompletableFuture<Double>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), stale = new LongAdder(),
+            staleUsed = new LongAdder(), loads = new LongAdder(), coalesced = new LongAdder(), evictions = new LongAdder();
+
+    /**
+     * @param loader   loads the rate of a pair from the source, i.e. the conversion API
+     * @param ttlNanos how long is a loaded rate used, in nanoseconds
+     * @param capacity how many pairs are cached at most
+     */
+    public RateCache(ToDoubleFunction<Pair> loader, long ttlNanos, int capacity) {
+        this.loader = loader;
+        this.ttlNanos = ttlNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair, Entry> eldest) {
+                if (size() <= capacity) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param from from currency
+     * @param to   to currency
+     * @return how much of the {@code to} currency is one unit of the {@code from} currency
+     * @throws RuntimeException if the rate isn't cached and can't be loaded
+     */
+    public double get(Currency from, Currency to) {
+        Pair pair = new Pair(from, to);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(pair);
+        }
+        if (entry != null && System.nanoTime() - entry.loadedAt() < ttlNanos) {
+            hits.increment();
+            return entry.rate();
+        }
+        (entry == null ? misses : stale).increment();
+
+        try {
+            return load(pair);
+        } catch (RuntimeException e) {
+            if (entry == null) throw e;
+            staleUsed.increment();
+            Utils.printDebugMessage(String.format("Using a stale %s rate: %s", pair, e.getMessage()));
+            return entry.rate();
+        }
+    }
+
+    /**
+     * Loads the rate of a pair, or waits for the load already in progress
+     */
+    private double load(Pair pair) {
+        CompletableFuture<Double> own = new CompletableFuture<>();
+        CompletableFuture<Double> inProgress = loading.putIfAbsent(pair, own);
+        if (inProgress != null) {
+            coalesced.increment();
+            try {
+                return inProgress.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            // The previous load may have finished between the lookup and taking over the loading
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.get(pair);
+            }
+            if (entry != null && System.nanoTime() - entry.loadedAt() < ttlNanos) {
+                own.complete(entry.rate());
+                return entry.rate();
+            }
+
+            loads.increment();
+            double rate = loader.applyAsDouble(pair);
+            synchronized (entries) {
+                entries.put(pair, new Entry(rate, System.nanoTime()));
+            }
+            own.complete(rate);
+            return rate;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(pair, own);
+        }
+    }
+
+    /**
+     * Forgets all the cached rates
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return current statistics
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), stale.sum(), staleUsed.sum(), loads.sum(), coalesced.sum(), evictions.sum());
+    }
+}
@@ -0,0 +1,48 @@
+package bohac.exchange;
+
+import java.util.Currency;
+import java.util.OptionalDouble;
+
+/**
+ * Source of the exchange rates used by {@link bohac.entity.account.Balance#convert}
+ */
+public interface RateProvider extends AutoCloseable {
+    /**
+     * @param from from currency
+     * @param to   to currency
+     * @return how much of the {@code to} currency is one unit of the {@code from} currency, empty if the provider
+     * doesn't have the rate
+     */
+    OptionalDouble rate(Currency from, Currency to);
+
+    /**
+     * @param from from currency
+     * @param to   to currency
+     * @return how much of the {@code to} currency is one unit of the {@code from} currency
+     * @throws IllegalStateException if the provider doesn't have the rate
+     */
+    default double get(Currency from, Currency to) {
+        return rate(from, to).orElseThrow(() -> new IllegalStateException(String.format("No exchange rate of %s/%s",
+                from.getCurrencyCode(), to.getCurrencyCode())));
+    }
+
+    /**
+     * @return whether the provider has its rates available without waiting for anything
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    /**
+     * Starts any background work of the provider, must not block
+     */
+    default void start() {
+    }
+
+    /**
+     * Stops any background work of the provider
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,19 @@
+package bohac.exchange;
+
+/**
+ * Where the exchange rates come from
+ */
+public enum RateSource {
+    /**
+     * The conversion API only, see {@link HttpRateProvider}
+     */
+    HTTP,
+    /**
+     * The local snapshot only, for machines without network access, see {@link SnapshotRateProvider}
+     */
+    SNAPSHOT,
+    /**
+     * The local snapshot until the conversion API answers, see {@link TieredRateProvider}
+     */
+    TIERED
+}
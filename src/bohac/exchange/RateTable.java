@@ -0,0 +1,105 @@
+package bohac.exchange;
+
+import bohac.storage.JSONSerializable;
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Immutable table of the exchange rates of every currency against a single base currency. The rate of any other pair
+ * is derived from the two base rates, so a single table answers all the conversions.
+ */
+public final class RateTable implements JSONSerializable {
+    private final Currency base;
+    private final LocalDate date;
+    private final Map<String, Double> rates;
+    private final long loadedAt = System.nanoTime();
+
+    private RateTable(Currency base, LocalDate date, Map<String, Double> rates) {
+        this.base = base;
+        this.date = date;
+        this.rates = rates;
+    }
+
+    /**
+     * Static factory method
+     *
+     * @param base  base currency
+     * @param date  date the rates are valid for
+     * @param rates how much of a currency (by its code) is one unit of the base currency
+     * @return new instance of the {@link RateTable}
+     */
+    public static RateTable of(Currency base, LocalDate date, Map<String, Double> rates) {
+        Map<String, Double> copy = new HashMap<>();
+        rates.forEach((code, rate) -> copy.put(code.toUpperCase(Locale.ROOT), rate));
+        copy.put(base.getCurrencyCode(), 1.0);
+        return new RateTable(base, date, Map.copyOf(copy));
+    }
+
+    /**
+     * Parses a table in the format of the conversion API, i.e. {@code {"date": "2022-12-24", "eur": {"czk": 24.2, ...}}}
+     *
+     * @param json the API response or a saved table
+     * @return new instance of the {@link RateTable}
+     */
+    public static RateTable load(JSONObject json) {
+        String baseCode = json.keySet().stream().filter(key -> !key.equals("date")).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No base currency in the rate table"));
+        Currency base = Currency.getInstance(baseCode.toUpperCase(Locale.ROOT));
+        JSONObject table = json.getJSONObject(baseCode);
+        Map<String, Double> rates = new HashMap<>();
+        for (String code : table.keySet()) rates.put(code, table.getDouble(code));
+        return of(base, LocalDate.parse(json.getString("date")), rates);
+    }
+
+    /**
+     * @param from from currency
+     * @param to   to currency
+     * @return how much of the {@code to} currency is one unit of the {@code from} currency, empty if the table doesn't
+     * have a rate of either currency
+     */
+    public OptionalDouble rate(Currency from, Currency to) {
+        if (from == to) return OptionalDouble.of(1);
+        Double fromRate = rates.get(from.getCurrencyCode()), toRate = rates.get(to.getCurrencyCode());
+        if (fromRate == null || toRate == null || fromRate <= 0) return OptionalDouble.empty();
+        return OptionalDouble.of(toRate / fromRate);
+    }
+
+    public Currency getBase() {
+        return base;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of when the table was loaded
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public int size() {
+        return rates.size();
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        JSONObject table = new JSONObject();
+        rates.forEach((code, rate) -> table.put(code.toLowerCase(Locale.ROOT), rate));
+        return new JSONObject()
+                .put("date", date.toString())
+                .put(base.getCurrencyCode().toLowerCase(Locale.ROOT), table);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d %s rates of %s", rates.size(), base.getCurrencyCode(), date);
+    }
+}
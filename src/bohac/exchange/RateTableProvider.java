@@ -0,0 +1,139 @@
+package bohac.exchange;
+
+import bohac.util.Utils;
+
+import java.time.Duration;
+import java.util.Currency;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Exchange rates served from a {@link RateTable} of a single base currency, which is fetched again on a background
+ * thread every refresh interval. A fresh table replaces the old one at once, so the conversions are plain arithmetic
+ * that never waits for the network or a lock.
+ * <p>
+ * Until the first table is loaded, and for the currencies the table doesn't have, the rates are looked up by pair in
+ * the fallback {@link RateCache}. A failed refresh keeps the previous table.
+ */
+public class RateTableProvider implements RateProvider {
+    private final Currency base;
+    private final Function<Currency, RateTable> fetcher;
+    private final Duration interval;
+    private final RateCache fallback;
+    private final LongAdder tableHits = new LongAdder(), fallbacks = new LongAdder();
+    private volatile RateTable table;
+    private volatile Consumer<RateTable> listener = table -> {
+    };
+    private ScheduledExecutorService refresher;
+    private long refreshes, failures;
+
+    /**
+     * @param base     base currency of the fetched tables
+     * @param fetcher  fetches the table of the given base currency, i.e. from the conversion API
+     * @param interval how often is the table fetched
+     * @param fallback per pair rates used when the table can't answer
+     */
+    public RateTableProvider(Currency base, Function<Currency, RateTable> fetcher, Duration interval, RateCache fallback) {
+        this.base = base;
+        this.fetcher = fetcher;
+        this.interval = interval;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Sets who is notified of every newly fetched table, i.e. to keep a local copy
+     *
+     * @param listener the table listener
+     */
+    public void onRefresh(Consumer<RateTable> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts fetching the table in the background, the first fetch starts right away
+     */
+    @Override
+    public synchronized void start() {
+        if (refresher != null) return;
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fetches a new table and swaps it in, keeps the current one if the fetch fails
+     */
+    public void refresh() {
+        try {
+            RateTable fresh = fetcher.apply(base);
+            table = fresh;
+            synchronized (this) {
+                refreshes++;
+            }
+            Utils.printDebugMessage("Loaded exchange rates: " + fresh);
+            listener.accept(fresh);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                failures++;
+            }
+            Utils.printDebugMessage(String.format("Exchange rate refresh failed, keeping %s: %s",
+                    table == null ? "the per pair rates" : table, e.getMessage()));
+        }
+    }
+
+    /**
+     * @throws RuntimeException if neither the table nor the fallback has the rate
+     */
+    @Override
+    public OptionalDouble rate(Currency from, Currency to) {
+        if (from == to) return OptionalDouble.of(1);
+        RateTable current = table;
+        if (current != null) {
+            OptionalDouble rate = current.rate(from, to);
+            if (rate.isPresent()) {
+                tableHits.increment();
+                return rate;
+            }
+        }
+        fallbacks.increment();
+        return OptionalDouble.of(fallback.get(from, to));
+    }
+
+    /**
+     * @return whether the first table is loaded
+     */
+    @Override
+    public boolean isReady() {
+        return table != null;
+    }
+
+    /**
+     * @return potentially empty {@code Optional} with the current table
+     */
+    public Optional<RateTable> getTable() {
+        return Optional.ofNullable(table);
+    }
+
+    /**
+     * Stops the background refresh
+     */
+    @Override
+    public synchronized void close() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d from the table (%d refreshes, %d failed), %d per pair: %s", tableHits.sum(), refreshes,
+                failures, fallbacks.sum(), fallback.getStats());
+    }
+}
@@ -0,0 +1,78 @@
+package bohac.exchange;
+
+import bohac.util.Utils;
+import org.json.JSONException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Currency;
+import java.util.OptionalDouble;
+
+/**
+ * Exchange rates of a {@link RateTable} saved in a local file, works without any network access. The file is in the
+ * format of the conversion API, so a response of the API can be used as is.
+ */
+public class SnapshotRateProvider implements RateProvider {
+    private final Path file;
+    private volatile RateTable table;
+
+    private SnapshotRateProvider(Path file, RateTable table) {
+        this.file = file;
+        this.table = table;
+    }
+
+    /**
+     * Loads the snapshot file. Acts as a static factory method also.
+     *
+     * @param file snapshot file, doesn't have to exist
+     * @return new instance of the {@link SnapshotRateProvider}, without any rates if the file doesn't exist or can't be
+     * read
+     */
+    public static SnapshotRateProvider load(Path file) {
+        RateTable table = null;
+        if (Files.exists(file)) {
+            try {
+                table = RateTable.load(Utils.parseFile(file.toFile()));
+                Utils.printDebugMessage(String.format("Loaded exchange rate snapshot: %s", table));
+            } catch (JSONException | IllegalArgumentException e) {
+                Utils.printDebugMessage(String.format("Skipping exchange rate snapshot %s: %s", file, e.getMessage()));
+            }
+        }
+        return new SnapshotRateProvider(file, table);
+    }
+
+    /**
+     * Replaces the snapshot, writes it to the file
+     *
+     * @param table new rates
+     */
+    public void save(RateTable table) {
+        this.table = table;
+        try {
+            Utils.writeFile(file, table.toJSON().toString());
+        } catch (RuntimeException e) {
+            Utils.printDebugMessage(String.format("Exchange rate snapshot not saved: %s", e.getMessage()));
+        }
+    }
+
+    @Override
+    public OptionalDouble rate(Currency from, Currency to) {
+        if (from == to) return OptionalDouble.of(1);
+        RateTable current = table;
+        return current == null ? OptionalDouble.empty() : current.rate(from, to);
+    }
+
+    /**
+     * @return whether there is a snapshot
+     */
+    @Override
+    public boolean isReady() {
+        return table != null;
+    }
+
+    @Override
+    public String toString() {
+        RateTable current = table;
+        return current == null ? "no snapshot" : current.toString();
+    }
+}
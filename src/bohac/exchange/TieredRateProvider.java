@@ -0,0 +1,60 @@
+package bohac.exchange;
+
+import java.util.Currency;
+import java.util.OptionalDouble;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves the exchange rates from the local snapshot while the remote provider warms up, and from the remote provider
+ * once its first table is loaded. Every table the remote provider fetches is saved as the new snapshot, so the next
+ * start has recent rates right away even without network access.
+ * <p>
+ * The remote provider is asked directly only for the rates the snapshot doesn't have.
+ */
+public class TieredRateProvider implements RateProvider {
+    private final SnapshotRateProvider snapshot;
+    private final RateTableProvider remote;
+    private final LongAdder fromSnapshot = new LongAdder();
+
+    /**
+     * @param snapshot local snapshot
+     * @param remote   remote provider, its tables are saved to the snapshot
+     */
+    public TieredRateProvider(SnapshotRateProvider snapshot, RateTableProvider remote) {
+        this.snapshot = snapshot;
+        this.remote = remote;
+        remote.onRefresh(snapshot::save);
+    }
+
+    @Override
+    public OptionalDouble rate(Currency from, Currency to) {
+        if (!remote.isReady()) {
+            OptionalDouble rate = snapshot.rate(from, to);
+            if (rate.isPresent()) {
+                fromSnapshot.increment();
+                return rate;
+            }
+        }
+        return remote.rate(from, to);
+    }
+
+    @Override
+    public boolean isReady() {
+        return remote.isReady() || snapshot.isReady();
+    }
+
+    @Override
+    public void start() {
+        remote.start();
+    }
+
+    @Override
+    public void close() {
+        remote.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d from the snapshot (%s), remote %s", fromSnapshot.sum(), snapshot, remote);
+    }
+}
@@ -17,13 +17,28 @@ import java.nio.file.Paths;
 import java.util.*;
 
 /**
- * The {@link AccountList} represents a collection of {@link Account} objects
+ * The {@link AccountList} represents a collection of {@link Account} objects, indexed by the id and by the owners.
+ * <p>
+ * Thread-safe. The lookups by id don't lock - the payments, the ledger and the standing orders use them - the owner
+ * and the name indexes are guarded by the monitor of the list.
  */
 public class AccountList implements Iterable<Account> {
-    private final List<Account> accounts;
+    private final EntityRegistry<Account> accounts;
+    /**
+     * Reverse index - owner id to all of their accounts
+     */
+    private final Map<UUID, Set<Account>> byOwner = new HashMap<>();
+    /**
+     * Reverse index - owner id to their open accounts
+     */
+    private final Map<UUID, Set<Account>> openByOwner = new HashMap<>();
+    /**
+     * Fuzzy search index of the account names
+     */
+    private final TrigramIndex<Account> byName = new TrigramIndex<>();
 
     public AccountList() {
-        this.accounts = new ArrayList<>();
+        this.accounts = new EntityRegistry<>(Account::getId);
     }
 
     /**
@@ -33,7 +48,7 @@ public class AccountList implements Iterable<Account> {
      * @return potentially empty {@code Optional<Account>} object
      */
     public Optional<Account> getByID(UUID uuid) {
-        return accounts.stream().filter(account -> account.getId().equals(uuid)).findFirst();
+        return accounts.get(uuid);
     }
 
     /**
@@ -42,21 +57,51 @@ public class AccountList implements Iterable<Account> {
      * @param user user
      * @return array of {@link Account} objects
      */
-    public List<Account> getUserAccounts(User user) {
-        return accounts.stream().filter(account -> account.getOwners().contains(user)).toList();
+    public synchronized List<Account> getUserAccounts(User user) {
+        return new ArrayList<>(byOwner.getOrDefault(user.getId(), Set.of()));
+    }
+
+    /**
+     * Gets the open accounts associated with a given user
+     *
+     * @param user user
+     * @return array of {@link Account} objects
+     */
+    public synchronized List<Account> getOpenUserAccounts(User user) {
+        return new ArrayList<>(openByOwner.getOrDefault(user.getId(), Set.of()));
+    }
+
+    /**
+     * Updates the owner and the name index of an account, called whenever the owners of an account change, it gets
+     * renamed or closed
+     *
+     * @param account account
+     */
+    public synchronized void reindex(Account account) {
+        // Accounts not (yet) in the list are indexed once they are added
+        if (accounts.get(account.getId()).orElse(null) != account) return;
+        byName.put(account, account.getName(true));
+        for (User owner : account.getOwners()) {
+            byOwner.computeIfAbsent(owner.getId(), id -> new LinkedHashSet<>()).add(account);
+            Set<Account> open = openByOwner.computeIfAbsent(owner.getId(), id -> new LinkedHashSet<>());
+            if (account.isClosed()) open.remove(account);
+            else open.add(account);
+        }
     }
 
     public List<Account> all() {
-        return new ArrayList<>(accounts);
+        return accounts.all();
     }
 
     /**
      * Adds a new account to the account list
      *
      * @param account account object
+     * @throws IllegalArgumentException if an account with the same id already exists
      */
-    public void add(Account account) {
+    public synchronized void add(Account account) {
         accounts.add(account);
+        reindex(account);
     }
 
     /**
@@ -76,12 +121,30 @@ public class AccountList implements Iterable<Account> {
         }
 
         // similar name
-        List<Account> potentialAccounts = new ArrayList<>();
-        for (Account account : accounts) {
-            if (Utils.similarity(account.getName(true), s) > 0.4 && !account.isClosed()) potentialAccounts.add(account);
+        List<Account> similar;
+        synchronized (this) {
+            similar = byName.search(s, 0.4);
         }
+        return similar.stream().filter(account -> !account.isClosed()).toArray(Account[]::new);
+    }
+
+    /**
+     * Applies the journal on top of the loaded account snapshots
+     *
+     * @param journal journal
+     */
+    public void replay(Journal journal) {
+        journal.replay(record -> getByID(record.id()).ifPresentOrElse(account -> account.replay(record),
+                () -> Utils.printDebugMessage(String.format("Journal record %d references an unknown account %s", record.sequence(), record.id()))));
+    }
 
-        return potentialAccounts.toArray(Account[]::new);
+    /**
+     * Folds the journal into fresh snapshots of the touched accounts
+     *
+     * @param journal journal
+     */
+    public void checkpoint(Journal journal) {
+        journal.checkpoint(id -> getByID(id).ifPresent(Account::snapshot));
     }
 
     /**
@@ -95,22 +158,28 @@ public class AccountList implements Iterable<Account> {
         if (!dataFolder.exists()) {
             Utils.printDebugMessage("Account data folder not found, creating..." + (dataFolder.mkdir() ? "done" : "error"));
         }
-        File[] accountFiles = dataFolder.listFiles();
-        if (accountFiles != null) {
-            if (accountFiles.length == 0) {
-                Account.DEFAULT_ACCOUNTS.forEach(account -> {
-                    Utils.printDebugMessage("Creating a default account: " + account);
-                    accounts.add(account);
-                    account.save();
-                });
-            }
-            for (File userFile : accountFiles) {
-                Utils.printDebugMessage(String.format("Loading account file %s", userFile));
-                Utils.loadFile(userFile, object -> {
-                    accounts.add(Account.load(object));
-                });
+        int files = EntityLoader.load(dataFolder.toPath(), BinaryCodec.Kind.ACCOUNT, Account::load, Account::load, Account::load, account -> {
+            try {
+                accounts.add(account);
+            } catch (IllegalArgumentException e) {
+                Utils.printDebugMessage(String.format("Skipping account %s: %s", account.getId(), e.getMessage()));
             }
+        }, "account");
+        if (files == 0) {
+            Account.DEFAULT_ACCOUNTS.forEach(account -> {
+                Utils.printDebugMessage("Creating a default account: " + account);
+                accounts.add(account);
+                account.save();
+            });
+        }
+
+        // Second phase - the accounts are decoded with unresolved references to their users
+        EntityLinker<User> users = EntityLinker.of(Bank.users::getByID, "user");
+        for (Account account : accounts) {
+            account.link(users);
+            accounts.reindex(account);
         }
+        users.report();
         return accounts;
     }
 
@@ -0,0 +1,248 @@
+package bohac.storage;
+
+import bohac.entity.account.Money;
+import bohac.transaction.IncomingTransaction;
+import bohac.transaction.OutgoingTransaction;
+import bohac.transaction.Transaction;
+import bohac.util.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary format of the entity files. Every file holds a single record:
+ * magic (4 bytes), record kind (1), format version (1), payload, CRC32 of the payload (4).
+ * <p>
+ * In the payload UUIDs are stored as two longs, enums as ordinals, currencies as their ISO 4217 numeric codes and
+ * numbers and dates (epoch seconds) as zigzag varints. Money amounts are stored in the minor units of their currency
+ * (see {@link Money}) since version 2, version 1 records with {@code float} amounts are still read. Transactions carry
+ * the id of their transfer since version 3.
+ */
+public class BinaryCodec {
+    /**
+     * Current version of the binary format
+     */
+    public static final byte VERSION = 3;
+    private static final int MAGIC = 0x424B4E31;
+    private static final int HEADER_SIZE = 6;
+    private static final Map<Integer, Currency> CURRENCIES = new HashMap<>();
+
+    static {
+        Currency.getAvailableCurrencies().forEach(currency -> CURRENCIES.putIfAbsent(currency.getNumericCode(), currency));
+    }
+
+    private BinaryCodec() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Record kind - which entity the record holds
+     */
+    public enum Kind {
+        USER, ACCOUNT
+    }
+
+    /**
+     * Frames a binary serializable object into a record
+     *
+     * @param kind   record kind
+     * @param object serialized object
+     * @return the whole record
+     */
+    public static byte[] encode(Kind kind, BinarySerializable object) {
+        Writer payload = new Writer();
+        object.write(payload);
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return ByteBuffer.allocate(HEADER_SIZE + bytes.length + 4)
+                .putInt(MAGIC)
+                .put((byte) kind.ordinal())
+                .put(VERSION)
+                .put(bytes)
+                .putInt((int) crc.getValue())
+                .array();
+    }
+
+    /**
+     * Checks the record header and the checksum
+     *
+     * @param kind   expected record kind
+     * @param record the whole record
+     * @return reader positioned at the start of the payload
+     * @throws IllegalArgumentException if the record is corrupted or of a different kind or version
+     */
+    public static Reader decode(Kind kind, byte[] record) {
+        if (record.length < HEADER_SIZE + 4) throw new IllegalArgumentException("Record too short");
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        if (buffer.getInt() != MAGIC) throw new IllegalArgumentException("Not a binary entity record");
+        if (buffer.get() != kind.ordinal()) throw new IllegalArgumentException("Unexpected record kind");
+        byte version = buffer.get();
+        if (version < 1 || version > VERSION) throw new IllegalArgumentException("Unsupported record version");
+        int payloadLength = record.length - HEADER_SIZE - 4;
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_SIZE, payloadLength);
+        if ((int) crc.getValue() != buffer.getInt(HEADER_SIZE + payloadLength))
+            throw new IllegalArgumentException("Record checksum mismatch");
+        return new Reader(buffer.slice(HEADER_SIZE, payloadLength), version);
+    }
+
+    /**
+     * Payload writer
+     */
+    public static class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        public Writer writeByte(int value) {
+            out.write(value);
+            return this;
+        }
+
+        public Writer writeBoolean(boolean value) {
+            return writeByte(value ? 1 : 0);
+        }
+
+        /**
+         * Writes a signed long as a zigzag varint
+         */
+        public Writer writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.write((int) zigzag);
+            return this;
+        }
+
+        public Writer writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) out.write((int) (value >>> shift));
+            return this;
+        }
+
+        public Writer writeUUID(UUID uuid) {
+            return writeLong(uuid.getMostSignificantBits()).writeLong(uuid.getLeastSignificantBits());
+        }
+
+        /**
+         * Writes a string prefixed by its length, null is written as the length of -1
+         */
+        public Writer writeString(String value) {
+            if (value == null) return writeVarLong(-1);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        public Writer writeCurrency(Currency currency) {
+            return writeVarLong(currency.getNumericCode());
+        }
+
+        public Writer writeTransaction(Transaction transaction) {
+            boolean outgoing = transaction instanceof OutgoingTransaction;
+            writeByte((outgoing ? Transaction.Type.OUTGOING : Transaction.Type.INCOMING).ordinal())
+                    .writeVarLong(Utils.toEpoch(transaction.getDateTime()))
+                    .writeVarLong(transaction.getAmount())
+                    .writeCurrency(transaction.getCurrency())
+                    .writeUUID(transaction.getTargetId())
+                    .writeBoolean(transaction.getId() != null);
+            if (transaction.getId() != null) writeUUID(transaction.getId());
+            if (outgoing) writeUUID(((OutgoingTransaction) transaction).getUserID());
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Payload reader
+     */
+    public static class Reader {
+        private final ByteBuffer buffer;
+        private final byte version;
+
+        private Reader(ByteBuffer buffer, byte version) {
+            this.buffer = buffer;
+            this.version = version;
+        }
+
+        public int readByte() {
+            return buffer.get() & 0xFF;
+        }
+
+        public boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        public long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        public int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        /**
+         * Reads a money amount, converts a {@code float} amount of a version 1 record to the minor units
+         *
+         * @param currency currency of the amount
+         * @return the amount in the minor units of the currency
+         */
+        public long readMoney(Currency currency) {
+            return version < 2 ? Money.fromFloat(buffer.getFloat(), currency) : readVarLong();
+        }
+
+        public UUID readUUID() {
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+
+        public String readString() {
+            int length = readVarInt();
+            if (length < 0) return null;
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        public Currency readCurrency() {
+            return CURRENCIES.get(readVarInt());
+        }
+
+        public Transaction readTransaction() {
+            Transaction.Type type = Transaction.Type.values()[readByte()];
+            long epoch = readVarLong();
+            long amount;
+            Currency currency;
+            if (version < 2) {
+                float legacy = buffer.getFloat();
+                currency = readCurrency();
+                amount = Money.fromFloat(legacy, currency);
+            } else {
+                amount = readVarLong();
+                currency = readCurrency();
+            }
+            UUID target = readUUID();
+            UUID id = version >= 3 && readBoolean() ? readUUID() : null;
+            if (type == Transaction.Type.INCOMING)
+                return new IncomingTransaction(id, target, Utils.parseEpoch(epoch), amount, currency);
+            return new OutgoingTransaction(id, readUUID(), target, Utils.parseEpoch(epoch), amount, currency);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package bohac.storage;
+
+/**
+ * Classes implementing this interface can be represented in the binary entity format, see {@link BinaryCodec}
+ */
+public interface BinarySerializable {
+    /**
+     * Binary serializer method
+     *
+     * @param writer payload writer
+     */
+    void write(BinaryCodec.Writer writer);
+}
@@ -0,0 +1,204 @@
+package bohac.storage;
+
+import bohac.Configuration;
+import bohac.auditlog.AuditLogFile;
+import bohac.entity.User;
+import bohac.entity.account.Account;
+import bohac.util.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Placement of the per-entity files inside the data folders. With the {@link Configuration#SHARDED_LAYOUT} the files
+ * are spread over two levels of directories named by the first four hex digits of the entity id
+ * ({@code accounts/ab/cd/abcd...json}), so no directory grows past a few entries per shard.
+ * <p>
+ * Files still in the flat layout are found as well, so the data can be migrated while the bank is running. The
+ * {@code main} method is the migration tool, it moves every flat file into its shard.
+ */
+public class DataLayout {
+    /**
+     * Data folders that hold one file per entity
+     */
+    public static final List<String> DATA_FOLDERS = List.of(User.DATA_FOLDER, Account.DATA_FOLDER,
+            TransactionSegment.DATA_FOLDER, AuditLogFile.DATA_FOLDER);
+
+    private DataLayout() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param dataFolder data folder
+     * @param id         entity id
+     * @param extension  file extension
+     * @return where the file of the entity is written to
+     */
+    public static Path path(String dataFolder, UUID id, String extension) {
+        return Configuration.SHARDED_LAYOUT ? shardedPath(dataFolder, id, extension) : flatPath(dataFolder, id, extension);
+    }
+
+    /**
+     * @param dataFolder data folder
+     * @param id         entity id
+     * @param extension  file extension
+     * @return where the file of the entity currently is - the flat layout path, if the file hasn't been migrated yet
+     */
+    public static Path locate(String dataFolder, UUID id, String extension) {
+        Path path = path(dataFolder, id, extension);
+        if (!Configuration.SHARDED_LAYOUT || Files.exists(path)) return path;
+        Path flat = flatPath(dataFolder, id, extension);
+        return Files.exists(flat) ? flat : path;
+    }
+
+    /**
+     * Deletes the file of an entity in both layouts
+     *
+     * @param dataFolder data folder
+     * @param id         entity id
+     * @param extension  file extension
+     */
+    public static void delete(String dataFolder, UUID id, String extension) {
+        try {
+            Files.deleteIfExists(shardedPath(dataFolder, id, extension));
+            Files.deleteIfExists(flatPath(dataFolder, id, extension));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deletes the not yet migrated flat layout copy of an entity file, once it's been written into its shard
+     *
+     * @param dataFolder data folder
+     * @param id         entity id
+     * @param extension  file extension
+     */
+    public static void deleteStale(String dataFolder, UUID id, String extension) {
+        if (!Configuration.SHARDED_LAYOUT) return;
+        try {
+            Files.deleteIfExists(flatPath(dataFolder, id, extension));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Lazily enumerates all the files in a data folder, the flat layout files first, then the shards in order.
+     * The directories are read through {@link DirectoryStream}s, only a single shard is held in memory at a time.
+     * The returned stream has to be closed.
+     *
+     * @param folder data folder
+     * @return stream of the files
+     */
+    public static Stream<Path> list(Path folder) {
+        if (!Files.isDirectory(folder)) return Stream.empty();
+        return Stream.concat(
+                files(folder),
+                Stream.of(folder)
+                        .flatMap(DataLayout::shards)
+                        .flatMap(DataLayout::shards)
+                        .flatMap(shard -> files(shard).sorted()));
+    }
+
+    private static Path flatPath(String dataFolder, UUID id, String extension) {
+        return Paths.get(Configuration.DATA_ROOT, dataFolder, id + extension);
+    }
+
+    private static Path shardedPath(String dataFolder, UUID id, String extension) {
+        String name = id.toString();
+        return Paths.get(Configuration.DATA_ROOT, dataFolder, name.substring(0, 2), name.substring(2, 4), name + extension);
+    }
+
+    private static Stream<Path> files(Path folder) {
+        try {
+            return Files.list(folder).filter(Files::isRegularFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param folder folder
+     * @return the shard directories (two hex digits) inside the folder, sorted
+     */
+    private static Stream<Path> shards(Path folder) {
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder,
+                path -> Files.isDirectory(path) && path.getFileName().toString().matches("[0-9a-f]{2}"))) {
+            stream.forEach(shards::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        shards.sort(null);
+        return shards.stream();
+    }
+
+    /**
+     * Migration tool - moves all the files of the flat layout into the shards. Can be run while the bank is running,
+     * every file is moved atomically and a file that already exists in its shard (written by the bank in the meantime)
+     * takes precedence over its flat copy.
+     */
+    public static void main(String[] args) {
+        for (String dataFolder : DATA_FOLDERS) {
+            Path folder = Paths.get(Configuration.DATA_ROOT, dataFolder);
+            if (!Files.isDirectory(folder)) continue;
+            int moved = 0, skipped = 0;
+            try (Stream<Path> files = files(folder)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (migrate(dataFolder, file)) moved++;
+                    else skipped++;
+                }
+            }
+            System.out.printf("%s: %d files moved, %d skipped%n", dataFolder, moved, skipped);
+        }
+    }
+
+    /**
+     * @param dataFolder data folder
+     * @param file       file in the flat layout
+     * @return whether the file was moved
+     */
+    private static boolean migrate(String dataFolder, Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.');
+        UUID id;
+        try {
+            id = UUID.fromString(dot < 0 ? name : name.substring(0, dot));
+        } catch (IllegalArgumentException e) {
+            Utils.printDebugMessage(String.format("Skipping %s, not an entity file", file));
+            return false;
+        }
+        Path target = shardedPath(dataFolder, id, dot < 0 ? "" : name.substring(dot));
+        try {
+            Files.createDirectories(target.getParent());
+            try {
+                // Unlike a move, linking never replaces a copy the bank has written into the shard in the meantime
+                Files.createLink(target, file);
+                Files.delete(file);
+                return true;
+            } catch (UnsupportedOperationException e) {
+                if (!Files.exists(target)) {
+                    Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+                    return true;
+                }
+            } catch (FileAlreadyExistsException e) {
+                // Already in the shard
+            }
+            Files.deleteIfExists(file);
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bohac.storage;
+
+import bohac.util.Utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * On-disk format of the entity files
+ */
+public enum EntityFormat {
+    /**
+     * Human-readable JSON, see {@link JSONSerializable}
+     */
+    JSON(".json"),
+    /**
+     * Compact binary records, see {@link BinaryCodec}
+     */
+    BINARY(".bin");
+
+    private final String extension;
+
+    EntityFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @param dataFolder entity data folder
+     * @param id         entity id
+     * @return path of the entity file in this format
+     */
+    public Path path(String dataFolder, UUID id) {
+        return DataLayout.path(dataFolder, id, extension);
+    }
+
+    /**
+     * @param fileName file name
+     * @return the format of an entity file, null if it's not an entity file
+     */
+    public static EntityFormat of(String fileName) {
+        for (EntityFormat format : values()) {
+            if (fileName.endsWith(format.extension)) return format;
+        }
+        return null;
+    }
+
+    /**
+     * Durably writes an entity file in this format and removes its copies in the other formats and in the flat layout,
+     * so an entity is never loaded twice
+     *
+     * @param dataFolder entity data folder
+     * @param id         entity id
+     * @param content    encoded entity
+     */
+    public void write(String dataFolder, UUID id, byte[] content) {
+        Path path = path(dataFolder, id);
+        try {
+            Files.createDirectories(path.getParent());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Utils.writeFile(path, content);
+        deleteCopies(dataFolder, id);
+    }
+
+    /**
+     * Removes the copies of an entity file in the other formats and in the flat layout, once the file in this format
+     * has been written
+     *
+     * @param dataFolder entity data folder
+     * @param id         entity id
+     */
+    public void deleteCopies(String dataFolder, UUID id) {
+        DataLayout.deleteStale(dataFolder, id, extension);
+        for (EntityFormat format : values()) {
+            if (format != this) DataLayout.delete(dataFolder, id, format.extension);
+        }
+    }
+}
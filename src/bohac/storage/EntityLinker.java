@@ -0,0 +1,76 @@
+package bohac.storage;
+
+import bohac.util.Utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Resolves the references between the loaded entities. Entities are decoded with the ids of the entities they refer
+ * to, once everything is loaded the references are resolved in bulk against the id index of the referenced
+ * entities, so the linking takes linear time no matter how many entities and references there are.
+ * <p>
+ * References to entities that don't exist (dangling references) are collected and reported by {@link #report()}.
+ *
+ * @param <T> type of the referenced entities
+ */
+public class EntityLinker<T> {
+    private final Function<UUID, Optional<T>> table;
+    private final String label;
+    private final Map<UUID, Object> dangling = new LinkedHashMap<>();
+    private long resolved, unresolved;
+
+    private EntityLinker(Function<UUID, Optional<T>> table, String label) {
+        this.table = table;
+        this.label = label;
+    }
+
+    /**
+     * Static factory method
+     *
+     * @param table id lookup of the referenced entities, i.e. {@link EntityRegistry#get(UUID)}
+     * @param label entity label used in the report
+     * @param <T>   type of the referenced entities
+     * @return new instance of the {@link EntityLinker}
+     */
+    public static <T> EntityLinker<T> of(Function<UUID, Optional<T>> table, String label) {
+        return new EntityLinker<>(table, label);
+    }
+
+    /**
+     * Resolves a reference
+     *
+     * @param id       referenced id
+     * @param referrer who holds the reference, used in the report
+     * @return potentially empty {@code Optional} with the referenced entity
+     */
+    public Optional<T> resolve(UUID id, Object referrer) {
+        Optional<T> entity = table.apply(id);
+        if (entity.isPresent()) {
+            resolved++;
+        } else {
+            unresolved++;
+            dangling.putIfAbsent(id, referrer);
+        }
+        return entity;
+    }
+
+    /**
+     * @return how many references couldn't be resolved so far
+     */
+    public long getDanglingCount() {
+        return unresolved;
+    }
+
+    /**
+     * Prints out the linking statistics and every dangling reference along with the first entity holding it
+     */
+    public void report() {
+        Utils.printDebugMessage(String.format("Linked %d %s references, %d dangling", resolved, label, unresolved));
+        dangling.forEach((id, referrer) ->
+                Utils.printDebugMessage(String.format("Dangling %s reference %s (in %s)", label, id, referrer)));
+    }
+}
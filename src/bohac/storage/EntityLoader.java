@@ -0,0 +1,166 @@
+package bohac.storage;
+
+import bohac.Configuration;
+import bohac.util.Utils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Loads entity files in any of the {@link EntityFormat}s from a data folder. The files are enumerated lazily by
+ * {@link DataLayout#list(Path)}, so the list of all files is never built. In the parallel mode
+ * ({@link Configuration#PARALLEL_LOADING}) the files are read and parsed on a bounded pool of worker threads, the
+ * entities are then built and handed over in the order of enumeration, so the result is the same no matter how
+ * the work was scheduled.
+ * <p>
+ * With the {@link Configuration#STREAMING_PARSER} JSON files are decoded straight into the entities by the
+ * {@link JSONPullParser} already in the parsing phase.
+ */
+public class EntityLoader {
+    /**
+     * How many files per worker thread can be parsed ahead of the building
+     */
+    private static final int READ_AHEAD = 16;
+
+    private EntityLoader() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Loads all the entity files
+     *
+     * @param folder       entity data folder
+     * @param kind         binary record kind of the entity
+     * @param jsonLoader   builds an entity out of its JSON representation
+     * @param streamLoader decodes an entity straight from a JSON stream
+     * @param binaryLoader builds an entity out of its binary representation
+     * @param consumer     what to do with each loaded entity
+     * @param label        entity label used in the debug messages
+     * @param <T>          entity type
+     * @return how many entity files were found
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> int load(Path folder, BinaryCodec.Kind kind, Function<JSONObject, T> jsonLoader,
+                               Function<JSONPullParser, T> streamLoader, Function<BinaryCodec.Reader, T> binaryLoader,
+                               Consumer<T> consumer, String label) {
+        Function<Object, T> loader = object -> {
+            if (object instanceof JSONObject json) return jsonLoader.apply(json);
+            if (object instanceof BinaryCodec.Reader reader) return binaryLoader.apply(reader);
+            return (T) object;
+        };
+        // A file being parsed on a worker thread
+        record Parsed(Path path, Future<Object> object) {
+        }
+        int files = 0, loaded = 0;
+        long start = System.nanoTime(), waiting = 0;
+
+        try (Stream<Path> stream = DataLayout.list(folder)) {
+            Iterator<Path> paths = stream.filter(path -> EntityFormat.of(path.getFileName().toString()) != null).iterator();
+            if (!Configuration.PARALLEL_LOADING) {
+                while (paths.hasNext()) {
+                    Path path = paths.next();
+                    files++;
+                    Utils.printDebugMessage(String.format("Loading %s file %s", label, path));
+                    T entity = build(path, parse(path, kind, streamLoader), loader);
+                    if (entity != null) consumer.accept(entity);
+                }
+                return files;
+            }
+
+            int threads = Math.max(1, Configuration.LOADER_THREADS);
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "entity-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Files being parsed on the worker threads, in the order of enumeration
+            Deque<Parsed> window = new ArrayDeque<>();
+            try {
+                while (paths.hasNext() || !window.isEmpty()) {
+                    while (paths.hasNext() && window.size() < threads * READ_AHEAD) {
+                        Path path = paths.next();
+                        files++;
+                        window.add(new Parsed(path, executor.submit(() -> {
+                            Utils.printDebugMessage(String.format("Loading %s file %s", label, path));
+                            return parse(path, kind, streamLoader);
+                        })));
+                    }
+                    long waitStart = System.nanoTime();
+                    Parsed parsed = window.poll();
+                    Object object = parsed.object().get();
+                    waiting += System.nanoTime() - waitStart;
+                    T entity = build(parsed.path(), object, loader);
+                    if (entity == null) continue;
+                    consumer.accept(entity);
+                    loaded++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        long total = System.nanoTime() - start;
+        Utils.printDebugMessage(String.format("Loaded %d/%d %s files (waiting for parsing: %d ms, build: %d ms, total: %d ms)",
+                loaded, files, label, waiting / 1_000_000, (total - waiting) / 1_000_000, total / 1_000_000));
+        return files;
+    }
+
+    /**
+     * Reads and parses a single entity file
+     *
+     * @param file         entity file
+     * @param kind         binary record kind of the entity
+     * @param streamLoader decodes an entity straight from a JSON stream
+     * @return {@link JSONObject}, {@link BinaryCodec.Reader} or the already decoded entity depending on the file format,
+     * null if the file couldn't be read or is corrupted
+     */
+    private static Object parse(Path file, BinaryCodec.Kind kind, Function<JSONPullParser, ?> streamLoader) {
+        try {
+            if (EntityFormat.of(file.getFileName().toString()) == EntityFormat.BINARY)
+                return BinaryCodec.decode(kind, Files.readAllBytes(file));
+            if (!Configuration.STREAMING_PARSER) return Utils.parseFile(file.toFile());
+            return streamLoader.apply(JSONPullParser.of(file.toFile()));
+        } catch (IOException | IllegalArgumentException | JSONException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            Utils.printDebugMessage(String.format("Couldn't load file %s", file));
+            return null;
+        }
+    }
+
+    /**
+     * Builds the entity out of a parsed file. A file that parses, but doesn't hold a valid entity - a field is
+     * missing, an id or an enum value is invalid, a binary record is cut short - is skipped like a corrupted one.
+     *
+     * @param file   entity file
+     * @param object parsed file, null if it couldn't be parsed
+     * @param loader builds the entity
+     * @return the entity, null if the file is skipped
+     */
+    private static <T> T build(Path file, Object object, Function<Object, T> loader) {
+        if (object == null) return null;
+        try {
+            return loader.apply(object);
+        } catch (IllegalArgumentException | JSONException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            Utils.printDebugMessage(String.format("Couldn't load file %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+}
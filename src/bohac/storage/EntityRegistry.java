@@ -0,0 +1,126 @@
+package bohac.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Indexed collection of entities. Every entity is indexed by its id (the primary index) and by any number of unique
+ * secondary keys, so the lookups take constant time no matter how many entities there are. The indexes are updated
+ * together on {@link #add(Object)}, an entity clashing with an already registered one on any key isn't added at all.
+ * <p>
+ * The entities are iterated in the order they were added.
+ * <p>
+ * Thread-safe. The lookups don't lock, the registrations are serialized. An iteration goes over the entities
+ * registered when it started.
+ *
+ * @param <T> entity type
+ */
+public class EntityRegistry<T> implements Iterable<T> {
+    private final Function<T, UUID> id;
+    private final List<T> entities = new ArrayList<>();
+    private final Map<UUID, T> primary = new ConcurrentHashMap<>();
+    private final List<UniqueIndex<T>> indexes = new ArrayList<>();
+
+    /**
+     * @param id primary key of an entity
+     */
+    public EntityRegistry(Function<T, UUID> id) {
+        this.id = id;
+    }
+
+    /**
+     * Unique secondary index
+     *
+     * @param <T> entity type
+     */
+    public static class UniqueIndex<T> {
+        private final String name;
+        private final Function<T, String> key;
+        private final Map<String, T> entries = new ConcurrentHashMap<>();
+
+        private UniqueIndex(String name, Function<T, String> key) {
+            this.name = name;
+            this.key = key;
+        }
+
+        /**
+         * @param key searched key
+         * @return potentially empty {@code Optional} with the entity of the given key
+         */
+        public Optional<T> get(String key) {
+            return Optional.ofNullable(entries.get(key));
+        }
+    }
+
+    /**
+     * Adds a unique secondary index, the already registered entities are indexed right away
+     *
+     * @param name index name used in the error messages
+     * @param key  secondary key of an entity, null keys are not indexed
+     * @return the index
+     * @throws IllegalStateException if the registered entities clash on the key
+     */
+    public synchronized UniqueIndex<T> addIndex(String name, Function<T, String> key) {
+        UniqueIndex<T> index = new UniqueIndex<>(name, key);
+        for (T entity : entities) {
+            String value = key.apply(entity);
+            if (value != null && index.entries.putIfAbsent(value, entity) != null)
+                throw new IllegalStateException(String.format("Duplicate %s %s", name, value));
+        }
+        indexes.add(index);
+        return index;
+    }
+
+    /**
+     * Registers an entity
+     *
+     * @param entity entity
+     * @throws IllegalArgumentException if an entity with the same id or the same secondary key is already registered
+     */
+    public synchronized void add(T entity) {
+        UUID key = id.apply(entity);
+        if (primary.containsKey(key)) throw new IllegalArgumentException(String.format("Duplicate id %s", key));
+        for (UniqueIndex<T> index : indexes) {
+            String value = index.key.apply(entity);
+            if (value != null && index.entries.containsKey(value))
+                throw new IllegalArgumentException(String.format("Duplicate %s %s", index.name, value));
+        }
+
+        primary.put(key, entity);
+        for (UniqueIndex<T> index : indexes) {
+            String value = index.key.apply(entity);
+            if (value != null) index.entries.put(value, entity);
+        }
+        entities.add(entity);
+    }
+
+    /**
+     * @param uuid id
+     * @return potentially empty {@code Optional} with the entity of the given id
+     */
+    public Optional<T> get(UUID uuid) {
+        return Optional.ofNullable(primary.get(uuid));
+    }
+
+    /**
+     * @return a copy of all the registered entities
+     */
+    public synchronized List<T> all() {
+        return new ArrayList<>(entities);
+    }
+
+    public synchronized int size() {
+        return entities.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return all().iterator();
+    }
+}
@@ -0,0 +1,277 @@
+package bohac.storage;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+
+/**
+ * Streaming JSON reader. Unlike {@link org.json.JSONObject} it doesn't build a tree of the whole document, the caller
+ * walks the document token by token and decodes the values straight into the domain objects. Strings without escape
+ * sequences are cut out of the source in one go, numbers and UUIDs are parsed in place without boxing.
+ */
+public class JSONPullParser {
+    /**
+     * Kind of the next token
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private final String source;
+    private int position;
+
+    public JSONPullParser(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Reads the whole file into memory
+     *
+     * @param file JSON file
+     * @return parser positioned at the start of the document
+     * @throws IOException if the file couldn't be read
+     */
+    public static JSONPullParser of(File file) throws IOException {
+        return new JSONPullParser(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return kind of the next token, nothing is consumed
+     */
+    public Token peek() {
+        skipSeparators();
+        if (position >= source.length()) return Token.END_DOCUMENT;
+        return switch (source.charAt(position)) {
+            case '{' -> Token.BEGIN_OBJECT;
+            case '}' -> Token.END_OBJECT;
+            case '[' -> Token.BEGIN_ARRAY;
+            case ']' -> Token.END_ARRAY;
+            case '"' -> Token.STRING;
+            case 't', 'f' -> Token.BOOLEAN;
+            case 'n' -> Token.NULL;
+            case '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> Token.NUMBER;
+            default -> throw error("Unexpected character");
+        };
+    }
+
+    public void beginObject() {
+        expect(Token.BEGIN_OBJECT);
+        position++;
+    }
+
+    public void endObject() {
+        expect(Token.END_OBJECT);
+        position++;
+    }
+
+    public void beginArray() {
+        expect(Token.BEGIN_ARRAY);
+        position++;
+    }
+
+    public void endArray() {
+        expect(Token.END_ARRAY);
+        position++;
+    }
+
+    /**
+     * @return whether the current object or array has another element
+     */
+    public boolean hasNext() {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * @return name of the next member of the current object
+     */
+    public String nextName() {
+        String name = nextString();
+        skipWhitespace();
+        if (position >= source.length() || source.charAt(position) != ':') throw error("Expected ':'");
+        position++;
+        return name;
+    }
+
+    public String nextString() {
+        expect(Token.STRING);
+        int start = ++position;
+        int end = start;
+        char c;
+        while (end < source.length() && (c = source.charAt(end)) != '"') {
+            if (c == '\\') return nextEscapedString(start, end);
+            end++;
+        }
+        if (end >= source.length()) throw error("Unterminated string");
+        position = end + 1;
+        return source.substring(start, end);
+    }
+
+    /**
+     * Parses a UUID string in place, without creating the intermediate {@link String}
+     *
+     * @return the UUID
+     */
+    public UUID nextUUID() {
+        expect(Token.STRING);
+        int start = position + 1;
+        if (start + 36 < source.length() && source.charAt(start + 36) == '"'
+                && source.charAt(start + 8) == '-' && source.charAt(start + 13) == '-'
+                && source.charAt(start + 18) == '-' && source.charAt(start + 23) == '-') {
+            long most = hex(start, 8) << 32 | hex(start + 9, 4) << 16 | hex(start + 14, 4);
+            long least = hex(start + 19, 4) << 48 | hex(start + 24, 12);
+            position = start + 37;
+            return new UUID(most, least);
+        }
+        return UUID.fromString(nextString());
+    }
+
+    public long nextLong() {
+        expect(Token.NUMBER);
+        int start = position;
+        boolean negative = source.charAt(position) == '-';
+        if (negative) position++;
+        long value = 0;
+        char c;
+        while (position < source.length() && (c = source.charAt(position)) >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            position++;
+        }
+        if (isFraction()) {
+            position = start;
+            return (long) Double.parseDouble(number());
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the exact decimal value of the number, i.e. for money amounts
+     */
+    public BigDecimal nextDecimal() {
+        expect(Token.NUMBER);
+        return new BigDecimal(number());
+    }
+
+    public boolean nextBoolean() {
+        expect(Token.BOOLEAN);
+        if (source.startsWith("true", position)) {
+            position += 4;
+            return true;
+        }
+        if (source.startsWith("false", position)) {
+            position += 5;
+            return false;
+        }
+        throw error("Expected a boolean");
+    }
+
+    /**
+     * Skips the next value including all of its nested values
+     */
+    public void skipValue() {
+        switch (peek()) {
+            case BEGIN_OBJECT -> {
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+            }
+            case BEGIN_ARRAY -> {
+                beginArray();
+                while (hasNext()) skipValue();
+                endArray();
+            }
+            case STRING -> nextString();
+            case NUMBER -> number();
+            case BOOLEAN -> nextBoolean();
+            case NULL -> {
+                if (!source.startsWith("null", position)) throw error("Expected null");
+                position += 4;
+            }
+            default -> throw error("Expected a value");
+        }
+    }
+
+    private String nextEscapedString(int start, int escape) {
+        StringBuilder builder = new StringBuilder(escape - start + 16).append(source, start, escape);
+        position = escape;
+        while (position < source.length()) {
+            char c = source.charAt(position++);
+            if (c == '"') return builder.toString();
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (position >= source.length()) break;
+            switch (c = source.charAt(position++)) {
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    if (position + 4 > source.length()) throw error("Invalid escape sequence");
+                    builder.append((char) hex(position, 4));
+                    position += 4;
+                }
+                default -> builder.append(c);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private String number() {
+        int start = position;
+        char c;
+        while (position < source.length() && ((c = source.charAt(position)) == '-' || c == '+' || c == '.'
+                || c == 'e' || c == 'E' || (c >= '0' && c <= '9'))) {
+            position++;
+        }
+        return source.substring(start, position);
+    }
+
+    private boolean isFraction() {
+        if (position >= source.length()) return false;
+        char c = source.charAt(position);
+        return c == '.' || c == 'e' || c == 'E';
+    }
+
+    private long hex(int start, int length) {
+        long value = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = Character.digit(source.charAt(i), 16);
+            if (digit < 0) throw error("Invalid hexadecimal digit");
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private void expect(Token token) {
+        if (peek() != token) throw error("Expected " + token);
+    }
+
+    /**
+     * Skips whitespace and the commas between elements
+     */
+    private void skipSeparators() {
+        char c;
+        while (position < source.length() && ((c = source.charAt(position)) == ',' || Character.isWhitespace(c))) {
+            position++;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < source.length() && Character.isWhitespace(source.charAt(position))) position++;
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(String.format("%s at character %d", message, position));
+    }
+}
@@ -0,0 +1,281 @@
+package bohac.storage;
+
+import bohac.Configuration;
+import bohac.util.Utils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only write-ahead journal. Every entity mutation is appended as a single small JSON line to the current
+ * segment instead of rewriting the whole entity file. Every record carries a global sequence number, snapshots
+ * remember the last sequence number they contain, so replaying the journal on top of a snapshot never applies
+ * a record twice.
+ * <p>
+ * Segments are named by the sequence number of their first record. Once there are more than
+ * {@link Configuration#JOURNAL_CHECKPOINT_SEGMENTS} of them, the journal is folded into fresh snapshots of all the
+ * touched entities and the old segments are deleted.
+ */
+public class Journal implements Closeable {
+    /**
+     * A single journal record
+     *
+     * @param sequence global sequence number
+     * @param id       id of the mutated entity
+     * @param op       mutation type
+     * @param data     mutation payload
+     */
+    public record Record(long sequence, UUID id, String op, JSONObject data) {
+    }
+
+    private static final String SEGMENT_EXTENSION = ".log";
+
+    private final Path folder;
+    private final Set<UUID> touched = new HashSet<>();
+    /**
+     * Serializes the checkpoints, the monitor of the journal itself is only held for short steps of a checkpoint
+     */
+    private final Object checkpointLock = new Object();
+    private Path segment;
+    private FileChannel channel;
+    private BufferedWriter writer;
+    private long sequence;
+    private long segmentBytes;
+    /**
+     * How many segments there are in the folder, the current one included
+     */
+    private int segments;
+
+    private Journal(Path folder, long sequence) {
+        this.folder = folder;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Opens the journal in the given folder, creates the folder if it doesn't exist yet
+     *
+     * @param folder journal folder
+     * @return the opened {@link Journal}
+     */
+    public static Journal open(Path folder) {
+        try {
+            Files.createDirectories(folder);
+            List<Path> segments = listSegments(folder);
+            long sequence = 0;
+            if (!segments.isEmpty()) {
+                // The segment name is the sequence of its first record - an empty segment still carries the sequence
+                sequence = segmentStart(segments.get(segments.size() - 1)) - 1;
+                for (Path segment : segments) {
+                    for (Record record : readSegment(segment)) sequence = Math.max(sequence, record.sequence());
+                }
+            }
+            Journal journal = new Journal(folder, sequence);
+            journal.segments = segments.size();
+            if (segments.isEmpty()) journal.roll();
+            else journal.openSegment(segments.get(segments.size() - 1));
+            return journal;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends a record to the current segment. The record is not guaranteed to be on the disk until {@link #flush()}
+     *
+     * @param id   id of the mutated entity
+     * @param op   mutation type
+     * @param data mutation payload
+     * @return the sequence number of the appended record
+     */
+    public synchronized long append(UUID id, String op, JSONObject data) {
+        long recordSequence = ++sequence;
+        String line = new JSONObject()
+                .put("seq", recordSequence)
+                .put("id", id)
+                .put("op", op)
+                .put("data", data)
+                .toString();
+        try {
+            if (segmentBytes >= Configuration.JOURNAL_SEGMENT_SIZE) roll();
+            writer.write(line);
+            writer.newLine();
+            segmentBytes += line.length() + 1;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        touched.add(id);
+        return recordSequence;
+    }
+
+    /**
+     * Flushes all the appended records to the disk
+     */
+    public synchronized void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Flushes all the appended records and forces them to the storage device
+     */
+    public synchronized void sync() {
+        try {
+            writer.flush();
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Goes through all the records in the journal in order
+     *
+     * @param consumer what to do with each record
+     */
+    public synchronized void replay(Consumer<Record> consumer) {
+        flush();
+        for (Path segment : listSegments(folder)) {
+            for (Record record : readSegment(segment)) {
+                touched.add(record.id());
+                consumer.accept(record);
+            }
+        }
+    }
+
+    /**
+     * @return whether the journal has grown enough to be folded into snapshots
+     */
+    public synchronized boolean needsCheckpoint() {
+        return segments > Configuration.JOURNAL_CHECKPOINT_SEGMENTS;
+    }
+
+    /**
+     * Folds the journal into snapshots. Every entity that has been touched since the last checkpoint is passed to the
+     * {@code snapshot} consumer, which is expected to write out the whole entity, afterwards all the segments before
+     * the checkpoint are deleted.
+     * <p>
+     * The snapshots are written without holding the monitor of the journal, the records keep being appended to a new
+     * segment meanwhile. A snapshot takes the locks of its entity, which the writers hold while they append.
+     *
+     * @param snapshot writes out a snapshot of the entity with the given id
+     */
+    public void checkpoint(Consumer<UUID> snapshot) {
+        synchronized (checkpointLock) {
+            List<UUID> entities;
+            long checkpointSequence;
+            synchronized (this) {
+                try {
+                    roll();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                entities = new ArrayList<>(touched);
+                touched.clear();
+                checkpointSequence = sequence;
+            }
+            try {
+                entities.forEach(snapshot);
+            } catch (RuntimeException e) {
+                // The old segments stay, the next checkpoint has to write these entities again
+                synchronized (this) {
+                    touched.addAll(entities);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                try {
+                    for (Path segment : listSegments(folder)) {
+                        if (segmentStart(segment) <= checkpointSequence && Files.deleteIfExists(segment)) segments--;
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one
+     */
+    private void roll() throws IOException {
+        if (writer != null) {
+            writer.flush();
+            channel.force(false);
+            writer.close();
+        }
+        Path next = folder.resolve(String.format("%019d%s", sequence + 1, SEGMENT_EXTENSION));
+        // An empty segment is reopened, not followed by a new one
+        if (!next.equals(segment)) segments++;
+        openSegment(next);
+    }
+
+    private void openSegment(Path segment) throws IOException {
+        this.segment = segment;
+        this.channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+        this.segmentBytes = channel.size();
+    }
+
+    private static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+    }
+
+    private static List<Path> listSegments(Path folder) {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_EXTENSION))
+                    .sorted(Comparator.comparingLong(Journal::segmentStart))
+                    .toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads all the records of a segment. A torn record at the end of a segment (crash during a write) is skipped.
+     */
+    private static List<Record> readSegment(Path segment) {
+        List<Record> records = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    JSONObject object = new JSONObject(line);
+                    records.add(new Record(object.getLong("seq"), UUID.fromString(object.getString("id")),
+                            object.getString("op"), object.getJSONObject("data")));
+                } catch (JSONException | IllegalArgumentException e) {
+                    Utils.printDebugMessage(String.format("Skipping a corrupted journal record in %s", segment));
+                }
+            }
+        } catch (IOException e) {
+            Utils.printDebugMessage(String.format("Couldn't read journal segment %s", segment));
+        }
+        return records;
+    }
+}
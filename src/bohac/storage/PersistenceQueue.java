@@ -0,0 +1,228 @@
+package bohac.storage;
+
+import bohac.Configuration;
+import bohac.util.Utils;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Write-behind persistence stage. Saved entities are queued up instead of being written on the caller's thread,
+ * repeated saves of the same entity are coalesced into a single write. A background thread writes the queued
+ * entities in batches - once {@link Configuration#WRITE_BEHIND_BATCH_SIZE} entities are waiting or every
+ * {@link Configuration#WRITE_BEHIND_INTERVAL} - and syncs the journal and the folders of the written files once per
+ * batch.
+ * <p>
+ * Durability critical paths (i.e. payments) call {@link #barrier()}, which returns only after everything queued
+ * so far is on the disk. A batch that fails is reported to the barriers waiting on it, its writes are queued up again
+ * (unless the entity has been saved again since) and retried with the next batch.
+ * <p>
+ * The worker also folds the journal into snapshots once it needs a checkpoint, so the checkpoints don't hold up
+ * the callers of {@link #submitJournal()}.
+ */
+public class PersistenceQueue implements AutoCloseable {
+    /**
+     * A single queued write
+     *
+     * @param format     entity file format
+     * @param dataFolder entity data folder
+     * @param id         entity id
+     * @param content    encoded entity
+     */
+    private record Write(EntityFormat format, String dataFolder, UUID id, byte[] content) {
+    }
+
+    private final Journal journal;
+    private final Runnable checkpoint;
+    private final Thread worker;
+    private final Object lock = new Object();
+    private Map<UUID, Write> pending = new LinkedHashMap<>();
+    private boolean journalDirty;
+    private boolean running = true;
+    private long requested;
+    /**
+     * Barriers waiting for a batch, by their ticket
+     */
+    private final NavigableMap<Long, CompletableFuture<Void>> waiting = new TreeMap<>();
+    private long batches, writes, coalesced;
+
+    private PersistenceQueue(Journal journal, Runnable checkpoint) {
+        this.journal = journal;
+        this.checkpoint = checkpoint;
+        this.worker = new Thread(this::run, "persistence-queue");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Starts the write-behind persistence. Acts as a static factory method also.
+     *
+     * @param journal    journal to sync with every batch, can be null
+     * @param checkpoint folds the journal into snapshots, run after a batch once the journal needs it
+     * @return the started {@link PersistenceQueue}
+     */
+    public static PersistenceQueue start(Journal journal, Runnable checkpoint) {
+        PersistenceQueue queue = new PersistenceQueue(journal, checkpoint);
+        queue.worker.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(queue::close));
+        return queue;
+    }
+
+    /**
+     * Queues up an entity write, replaces any not yet written content of the same entity
+     *
+     * @param format     entity file format
+     * @param dataFolder entity data folder
+     * @param id         entity id
+     * @param content    encoded entity
+     */
+    public void submit(EntityFormat format, String dataFolder, UUID id, byte[] content) {
+        synchronized (lock) {
+            if (pending.put(id, new Write(format, dataFolder, id, content)) != null) coalesced++;
+            if (pending.size() >= Configuration.WRITE_BEHIND_BATCH_SIZE) lock.notifyAll();
+        }
+    }
+
+    /**
+     * Drops the queued write of an entity, because a newer version of it has been written out directly
+     *
+     * @param id entity id
+     */
+    public void discard(UUID id) {
+        synchronized (lock) {
+            pending.remove(id);
+        }
+    }
+
+    /**
+     * Marks the journal as having records that need to be synced with the next batch
+     */
+    public void submitJournal() {
+        synchronized (lock) {
+            journalDirty = true;
+        }
+    }
+
+    /**
+     * Blocks until everything queued before this call is durably written
+     *
+     * @throws RuntimeException if the batch that was to write it failed, the writes are retried later
+     */
+    public void barrier() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (lock) {
+            waiting.put(++requested, done);
+            lock.notifyAll();
+        }
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes out everything that's left in the queue and stops the background thread
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (!running) return;
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Utils.printDebugMessage(String.format("Persistence queue closed (batches: %d, writes: %d, coalesced: %d)",
+                batches, writes, coalesced));
+    }
+
+    private void run() {
+        boolean failed = false;
+        while (true) {
+            Map<UUID, Write> batch;
+            boolean syncJournal;
+            long target;
+            boolean stop;
+            synchronized (lock) {
+                long deadline = System.currentTimeMillis() + Configuration.WRITE_BEHIND_INTERVAL.toMillis();
+                long remaining;
+                // A failed batch is retried after the interval, not right away, even if it's full
+                while (running && (failed || pending.size() < Configuration.WRITE_BEHIND_BATCH_SIZE) && waiting.isEmpty()
+                        && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                syncJournal = journalDirty;
+                journalDirty = false;
+                target = requested;
+                stop = !running;
+            }
+
+            RuntimeException error = null;
+            try {
+                flush(batch, syncJournal);
+            } catch (RuntimeException e) {
+                Utils.printDebugMessage(String.format("Persistence batch failed: %s", e.getMessage()));
+                error = e;
+            }
+
+            synchronized (lock) {
+                if (!batch.isEmpty() || syncJournal) batches++;
+                if (error == null) writes += batch.size();
+                else {
+                    // Newer content of an entity replaces the failed write, the rest is retried in the original order
+                    Map<UUID, Write> retry = new LinkedHashMap<>(batch);
+                    retry.keySet().removeAll(pending.keySet());
+                    retry.putAll(pending);
+                    pending = retry;
+                    journalDirty |= syncJournal;
+                }
+                NavigableMap<Long, CompletableFuture<Void>> released = waiting.headMap(target, true);
+                for (CompletableFuture<Void> done : released.values()) {
+                    if (error == null) done.complete(null);
+                    else done.completeExceptionally(error);
+                }
+                released.clear();
+            }
+            failed = error != null;
+            if (!failed && journal != null && journal.needsCheckpoint()) {
+                try {
+                    checkpoint.run();
+                } catch (RuntimeException e) {
+                    // The journal keeps the segments, the next batch tries again
+                    Utils.printDebugMessage(String.format("Journal checkpoint failed: %s", e.getMessage()));
+                }
+            }
+            if (stop) {
+                if (error != null) Utils.printDebugMessage(String.format("%d queued writes were not persisted", batch.size()));
+                return;
+            }
+        }
+    }
+
+    private void flush(Map<UUID, Write> batch, boolean syncJournal) {
+        Map<Path, byte[]> files = new LinkedHashMap<>();
+        for (Write write : batch.values()) files.put(write.format().path(write.dataFolder(), write.id()), write.content());
+        Utils.writeFiles(files);
+        for (Write write : batch.values()) write.format().deleteCopies(write.dataFolder(), write.id());
+        if (syncJournal && journal != null) journal.sync();
+    }
+}
@@ -0,0 +1,74 @@
+package bohac.storage;
+
+import bohac.entity.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Command line tool, compares the cost of the user lookups by the id and by the login in the {@link EntityRegistry}
+ * against the linear scan of a list, as the number of users grows.
+ * <p>
+ * Usage: {@code RegistryBenchmark [max users]}, the default is 100 000
+ */
+public class RegistryBenchmark {
+    private RegistryBenchmark() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        System.out.printf("%10s %16s %16s %16s %16s%n", "users", "scan id", "index id", "scan login", "index login");
+        for (int count = 10; count <= max; count *= 10) {
+            List<User> users = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                users.add(new User(UUID.randomUUID(), "user" + i, "Name", "Last name", "user" + i + "@bank.cz",
+                        "", LocalDateTime.now(), new UserPreferences(), false));
+            }
+            EntityRegistry<User> registry = new EntityRegistry<>(User::getId);
+            EntityRegistry.UniqueIndex<User> byUsername = registry.addIndex("username", User::getUsername);
+            EntityRegistry.UniqueIndex<User> byEmail = registry.addIndex("email", User::getEmail);
+            users.forEach(registry::add);
+
+            // The scans get slow quickly, so they are given fewer lookups
+            int scanLookups = Math.max(100, 10_000_000 / count);
+            int indexLookups = 1_000_000;
+            System.out.printf("%10d %13.1f ns %13.1f ns %13.1f ns %13.1f ns%n", count,
+                    measure(users, scanLookups, User::getId,
+                            id -> users.stream().filter(user -> user.getId().equals(id)).findFirst()),
+                    measure(users, indexLookups, User::getId, registry::get),
+                    measure(users, scanLookups, User::getEmail,
+                            login -> users.stream().filter(user -> user.getEmail().equals(login) || user.getUsername().equals(login)).findFirst()),
+                    measure(users, indexLookups, User::getEmail, login -> {
+                        Optional<User> user = byUsername.get(login);
+                        return user.isPresent() ? user : byEmail.get(login);
+                    }));
+        }
+    }
+
+    /**
+     * @param users   registered users
+     * @param lookups how many lookups are measured
+     * @param key     what is looked up
+     * @param lookup  the lookup
+     * @return average time of a single lookup in nanoseconds
+     */
+    private static <K> double measure(List<User> users, int lookups, Function<User, K> key, Function<K, Optional<User>> lookup) {
+        Random random = new Random(42);
+        List<K> keys = new ArrayList<>(lookups);
+        for (int i = 0; i < lookups; i++) keys.add(key.apply(users.get(random.nextInt(users.size()))));
+        int found = 0;
+        // Warm-up
+        for (int i = 0; i < Math.min(lookups, 1000); i++) if (lookup.apply(keys.get(i)).isPresent()) found++;
+        long start = System.nanoTime();
+        for (K k : keys) if (lookup.apply(k).isPresent()) found++;
+        long nanos = System.nanoTime() - start;
+        if (found == 0) throw new AssertionError();
+        return (double) nanos / lookups;
+    }
+}
@@ -0,0 +1,41 @@
+package bohac.storage;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the serialized form of an append-only list of {@link JSONSerializable} elements. Only the elements added
+ * since the last call are serialized, the rest is reused as is.
+ *
+ * @param <T> element type
+ */
+public class SerializationCache<T extends JSONSerializable> {
+    /**
+     * How many bytes of JSON didn't have to be serialized (or written) thanks to the caching
+     */
+    public static final AtomicLong BYTES_AVOIDED = new AtomicLong();
+
+    private final StringBuilder serialized = new StringBuilder();
+    private int count;
+
+    /**
+     * @param elements the append-only list this cache belongs to
+     * @return the comma separated JSON representation of all the elements - the content of a JSON array
+     */
+    public String serialize(List<T> elements) {
+        BYTES_AVOIDED.addAndGet(serialized.length());
+        for (; count < elements.size(); count++) {
+            if (count > 0) serialized.append(',');
+            serialized.append(elements.get(count).toJSON());
+        }
+        return serialized.toString();
+    }
+
+    /**
+     * @param elements the append-only list this cache belongs to
+     * @return whether there are elements in the list that haven't been serialized yet
+     */
+    public boolean isDirty(List<T> elements) {
+        return elements.size() != count;
+    }
+}
@@ -0,0 +1,131 @@
+package bohac.storage;
+
+import bohac.Bank;
+import bohac.Configuration;
+import bohac.entity.Entity;
+import bohac.entity.User;
+import bohac.entity.account.Account;
+import bohac.util.Utils;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Command line tool for the operators, converts the data between the {@link EntityFormat}s.
+ * <ul>
+ *     <li>{@code json} / {@code binary} - rewrites all the entity files in the given format</li>
+ *     <li>{@code export <folder>} - writes a human-readable JSON copy of every entity into the given folder</li>
+ *     <li>{@code benchmark [iterations]} - compares the size, the decoding time and the allocations of both formats
+ *     and of both JSON readers ({@code org.json} and the streaming {@link JSONPullParser})</li>
+ * </ul>
+ */
+public class SnapshotConverter {
+    private SnapshotConverter() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: SnapshotConverter json|binary|export <folder>|benchmark [iterations]");
+            return;
+        }
+        Bank.users = UserList.load(Paths.get(Configuration.DATA_ROOT, User.DATA_FOLDER).toFile());
+        Bank.accounts = AccountList.load(Paths.get(Configuration.DATA_ROOT, Account.DATA_FOLDER).toFile());
+
+        switch (args[0]) {
+            case "json" -> convert(EntityFormat.JSON);
+            case "binary" -> convert(EntityFormat.BINARY);
+            case "export" -> export(Paths.get(args[1]));
+            case "benchmark" -> benchmark(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+            default -> System.out.printf("Unknown command %s%n", args[0]);
+        }
+    }
+
+    /**
+     * Rewrites all the entity files in the given format
+     *
+     * @param format target format
+     */
+    private static void convert(EntityFormat format) {
+        for (User user : Bank.users) format.write(User.DATA_FOLDER, user.getId(), user.encode(format));
+        for (Account account : Bank.accounts) format.write(Account.DATA_FOLDER, account.getId(), account.encode(format));
+        System.out.printf("Converted %d users and %d accounts to %s%n", Bank.users.all().size(), Bank.accounts.all().size(), format);
+    }
+
+    /**
+     * Writes a JSON copy of every entity, including the transaction history and the audit log of the accounts
+     *
+     * @param folder export folder
+     */
+    private static void export(Path folder) {
+        try {
+            Files.createDirectories(folder.resolve(User.DATA_FOLDER));
+            Files.createDirectories(folder.resolve(Account.DATA_FOLDER));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (User user : Bank.users)
+            Utils.writeFile(folder.resolve(User.DATA_FOLDER).resolve(user.getId() + ".json"), user.toJSON().toString(2));
+        for (Account account : Bank.accounts)
+            Utils.writeFile(folder.resolve(Account.DATA_FOLDER).resolve(account.getId() + ".json"), account.toJSON().toString(2));
+        System.out.printf("Exported %d users and %d accounts to %s%n", Bank.users.all().size(), Bank.accounts.all().size(), folder);
+    }
+
+    /**
+     * Compares the size, the decoding time and the allocated memory of the JSON (read by {@code org.json} and by the
+     * {@link JSONPullParser}) and the binary format on the loaded data
+     *
+     * @param iterations how many times every entity is decoded
+     */
+    private static void benchmark(int iterations) {
+        report("users", Bank.users.all(), BinaryCodec.Kind.USER, User::load, User::load, User::load, iterations);
+        report("accounts", Bank.accounts.all(), BinaryCodec.Kind.ACCOUNT, Account::load, Account::load, Account::load, iterations);
+    }
+
+    private static <T extends Entity> void report(String label, List<T> entities, BinaryCodec.Kind kind,
+                                                  Function<JSONObject, T> jsonLoader,
+                                                  Function<JSONPullParser, T> streamLoader,
+                                                  Function<BinaryCodec.Reader, T> binaryLoader, int iterations) {
+        List<byte[]> json = entities.stream().map(entity -> entity.encode(EntityFormat.JSON)).toList();
+        List<byte[]> binary = entities.stream().map(entity -> entity.encode(EntityFormat.BINARY)).toList();
+
+        Measurement tree = measure(iterations, () -> json.forEach(bytes -> jsonLoader.apply(new JSONObject(new String(bytes, StandardCharsets.UTF_8)))));
+        Measurement stream = measure(iterations, () -> json.forEach(bytes -> streamLoader.apply(new JSONPullParser(new String(bytes, StandardCharsets.UTF_8)))));
+        Measurement decoded = measure(iterations, () -> binary.forEach(bytes -> binaryLoader.apply(BinaryCodec.decode(kind, bytes))));
+
+        int count = Math.max(1, entities.size()) * iterations;
+        System.out.printf("%s (%d), per entity:%n", label, entities.size());
+        System.out.printf("  org.json   %6d B  %8.1f us  %8d B allocated%n", json.stream().mapToInt(bytes -> bytes.length).sum(),
+                tree.nanos() / 1000.0 / count, tree.allocated() / count);
+        System.out.printf("  streaming  %6d B  %8.1f us  %8d B allocated%n", json.stream().mapToInt(bytes -> bytes.length).sum(),
+                stream.nanos() / 1000.0 / count, stream.allocated() / count);
+        System.out.printf("  binary     %6d B  %8.1f us  %8d B allocated%n", binary.stream().mapToInt(bytes -> bytes.length).sum(),
+                decoded.nanos() / 1000.0 / count, decoded.allocated() / count);
+    }
+
+    /**
+     * @param nanos     elapsed time
+     * @param allocated bytes allocated by the measuring thread, -1 if the JVM can't tell
+     */
+    private record Measurement(long nanos, long allocated) {
+    }
+
+    private static Measurement measure(int iterations, Runnable run) {
+        // Warm-up
+        for (int i = 0; i < Math.max(1, iterations / 10); i++) run.run();
+        com.sun.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() ? bean : null;
+        long allocatedBefore = threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) run.run();
+        long nanos = System.nanoTime() - start;
+        return new Measurement(nanos, threads == null ? -1 : threads.getCurrentThreadAllocatedBytes() - allocatedBefore);
+    }
+}
@@ -0,0 +1,282 @@
+package bohac.storage;
+
+import bohac.entity.account.Money;
+import bohac.transaction.IncomingTransaction;
+import bohac.transaction.OutgoingTransaction;
+import bohac.transaction.Transaction;
+import bohac.util.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Currency;
+import java.util.UUID;
+
+/**
+ * Transaction history of a single account stored in a binary segment file of fixed-width records. The file is read
+ * through a {@link MappedByteBuffer} and the records are decoded on access, so the history is never held on the heap
+ * as a whole. New transactions are appended to the end of the file. The mapping isn't renewed on every append, the
+ * records appended since it was made are read from the file directly, until they outgrow the mapped ones - so a history
+ * of n transactions is mapped O(log n) times. The file stays open until {@link #close()}, it's reopened on next access.
+ * <p>
+ * Record layout (big endian): type (1 byte), epoch seconds (8), amount (8, minor units - see {@link Money}), currency
+ * code (3, ASCII), counterparty account id (16, two longs), authorizing user id (16, two longs - zeros for incoming
+ * transactions), transfer id (16, two longs - zeros if the transaction has none). Version 1 segments, with the amount as
+ * a 4 byte {@code float}, and version 2 segments, without the transfer id, are converted when opened.
+ */
+public class TransactionSegment extends AbstractList<Transaction> {
+    /**
+     * What name is used for the data folder of the transaction segments
+     */
+    public static final String DATA_FOLDER = "transactions";
+    private static final int MAGIC = 0x42545853;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 68;
+    /**
+     * Record sizes of the older versions, by the version
+     */
+    private static final int[] LEGACY_RECORD_SIZES = {0, 48, 52};
+    private static final UUID NONE = new UUID(0, 0);
+    /**
+     * How many appended records at least are read from the file directly before the mapping is renewed
+     */
+    private static final int MIN_UNMAPPED_RECORDS = 256;
+
+    private final UUID accountID;
+    private Path path;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    /**
+     * How many records are mapped
+     */
+    private int mappedRecords;
+    private int size;
+
+    private TransactionSegment(UUID accountID) {
+        this.accountID = accountID;
+    }
+
+    /**
+     * Opens the transaction segment of an account. The file is opened on first access.
+     *
+     * @param accountID account id
+     * @return the {@link TransactionSegment}
+     */
+    public static TransactionSegment of(UUID accountID) {
+        return new TransactionSegment(accountID);
+    }
+
+    @Override
+    public synchronized Transaction get(int index) {
+        open();
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        if (index >= mappedRecords && size - mappedRecords >= Math.max(mappedRecords, MIN_UNMAPPED_RECORDS)) remap();
+        ByteBuffer buffer;
+        int offset;
+        if (index < mappedRecords) {
+            buffer = mapped;
+            offset = HEADER_SIZE + index * RECORD_SIZE;
+        } else {
+            buffer = read(index);
+            offset = 0;
+        }
+
+        byte type = buffer.get(offset);
+        long epoch = buffer.getLong(offset + 1);
+        long amount = buffer.getLong(offset + 9);
+        byte[] code = new byte[3];
+        buffer.get(offset + 17, code);
+        UUID target = new UUID(buffer.getLong(offset + 20), buffer.getLong(offset + 28));
+        Currency currency = Currency.getInstance(new String(code, StandardCharsets.US_ASCII));
+
+        UUID id = new UUID(buffer.getLong(offset + 52), buffer.getLong(offset + 60));
+        if (id.equals(NONE)) id = null;
+
+        if (type == Transaction.Type.INCOMING.ordinal()) {
+            return new IncomingTransaction(id, target, Utils.parseEpoch(epoch), amount, currency);
+        }
+        UUID user = new UUID(buffer.getLong(offset + 36), buffer.getLong(offset + 44));
+        return new OutgoingTransaction(id, user, target, Utils.parseEpoch(epoch), amount, currency);
+    }
+
+    @Override
+    public synchronized int size() {
+        open();
+        return size;
+    }
+
+    /**
+     * Appends a transaction to the end of the segment
+     *
+     * @param transaction transaction
+     * @return true
+     */
+    @Override
+    public synchronized boolean add(Transaction transaction) {
+        open();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        boolean outgoing = transaction instanceof OutgoingTransaction;
+        record.put((byte) (outgoing ? Transaction.Type.OUTGOING : Transaction.Type.INCOMING).ordinal())
+                .putLong(Utils.toEpoch(transaction.getDateTime()))
+                .putLong(transaction.getAmount())
+                .put(transaction.getCurrency().getCurrencyCode().getBytes(StandardCharsets.US_ASCII))
+                .putLong(transaction.getTargetId().getMostSignificantBits())
+                .putLong(transaction.getTargetId().getLeastSignificantBits());
+        UUID user = outgoing && ((OutgoingTransaction) transaction).getUserID() != null
+                ? ((OutgoingTransaction) transaction).getUserID() : NONE;
+        UUID id = transaction.getId() != null ? transaction.getId() : NONE;
+        record.putLong(user.getMostSignificantBits()).putLong(user.getLeastSignificantBits())
+                .putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits())
+                .flip();
+        try {
+            long position = HEADER_SIZE + (long) size * RECORD_SIZE;
+            while (record.hasRemaining()) position += channel.write(record, position);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Forces all the appended transactions to the storage device
+     */
+    public synchronized void force() {
+        if (channel == null) return;
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param extension file extension
+     * @return path of a file kept next to the segment file, i.e. an index of the segment
+     */
+    public Path companion(String extension) {
+        return DataLayout.locate(DATA_FOLDER, accountID, extension);
+    }
+
+    /**
+     * Closes the segment file and drops the mapping, the file is opened again on next access
+     */
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            channel = null;
+            mapped = null;
+            mappedRecords = 0;
+        }
+    }
+
+    /**
+     * Opens the segment file, creates it if it doesn't exist yet. A torn record at the end of the file is ignored.
+     */
+    private void open() {
+        if (channel != null) return;
+        path = DataLayout.locate(DATA_FOLDER, accountID, ".bin");
+        try {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) channel.write(header, header.position());
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                int magic = header.getInt(), version = header.getInt();
+                if (magic == MAGIC && version >= 1 && version < VERSION) migrate(version);
+                else if (magic != MAGIC || version != VERSION)
+                    throw new IllegalStateException(String.format("%s is not a transaction segment file", path));
+            }
+            size = (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rewrites an older segment in the current version - the {@code float} amounts of a version 1 segment are converted
+     * to the minor units, the transfer ids are left empty
+     *
+     * @param version version of the segment
+     */
+    private void migrate(int version) throws IOException {
+        int legacySize = LEGACY_RECORD_SIZES[version];
+        int count = (int) ((channel.size() - HEADER_SIZE) / legacySize);
+        ByteBuffer legacy = ByteBuffer.allocate(count * legacySize);
+        while (legacy.hasRemaining()) {
+            if (channel.read(legacy, HEADER_SIZE + legacy.position()) < 0) break;
+        }
+        legacy.flip();
+
+        ByteBuffer converted = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE).putInt(MAGIC).putInt(VERSION);
+        byte[] code = new byte[3], parties = new byte[32];
+        for (int i = 0; i < count; i++) {
+            byte type = legacy.get();
+            long epoch = legacy.getLong();
+            long amount;
+            if (version == 1) {
+                float legacyAmount = legacy.getFloat();
+                legacy.get(code).get(parties);
+                amount = Money.fromFloat(legacyAmount, Currency.getInstance(new String(code, StandardCharsets.US_ASCII)));
+            } else {
+                amount = legacy.getLong();
+                legacy.get(code).get(parties);
+            }
+            converted.put(type).putLong(epoch).putLong(amount).put(code).put(parties)
+                    .putLong(NONE.getMostSignificantBits()).putLong(NONE.getLeastSignificantBits());
+        }
+
+        channel.close();
+        Utils.writeFile(path, converted.array());
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Utils.printDebugMessage(String.format("Transaction segment %s converted from version %d to %d", path, version, VERSION));
+    }
+
+    /**
+     * Maps all the records. The mapping can't reach past the end of the file, mapping a writable channel would extend
+     * it, and the number of records is given by the length of the file.
+     */
+    private void remap() {
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + (long) size * RECORD_SIZE);
+            mappedRecords = size;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads a record that isn't mapped yet
+     *
+     * @param index record index
+     * @return buffer holding just the record
+     */
+    private ByteBuffer read(int index) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        try {
+            long position = HEADER_SIZE + (long) index * RECORD_SIZE;
+            while (record.hasRemaining()) {
+                if (channel.read(record, position + record.position()) < 0) throw new IOException("Truncated transaction segment " + path);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return record;
+    }
+}
@@ -0,0 +1,112 @@
+package bohac.storage;
+
+import bohac.util.Utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index of the trigrams (three letter substrings) of a text key of every entity, used to shortlist the
+ * candidates of a fuzzy search. Only the entities sharing enough trigrams with the query are returned, the exact
+ * similarity check is then run on the shortlist only.
+ * <p>
+ * A candidate has to share at least a {@link #MIN_SHARED_RATIO} of the query trigrams, so it has to be in at least
+ * one of the posting lists of the rarest query trigrams (the rest can't add up to the minimum on their own).
+ * Only those lists are read, which keeps the lookups fast even when the common trigrams are shared by a large part
+ * of the entities. The normalized keys are kept along, so the shortlist is verified by {@link #search(String, double)}
+ * without preparing them again on every lookup.
+ *
+ * @param <T> entity type
+ */
+public class TrigramIndex<T> {
+    /**
+     * What part of the query trigrams a candidate has to share
+     */
+    private static final double MIN_SHARED_RATIO = 1 / 3.0;
+
+    private final Map<String, Set<T>> postings = new HashMap<>();
+    private final Map<T, Set<String>> keys = new HashMap<>();
+    private final Map<T, char[]> normalized = new HashMap<>();
+
+    /**
+     * Indexes an entity under the given key, replaces the previously indexed key of the entity
+     *
+     * @param entity entity
+     * @param key    indexed text, i.e. the name
+     */
+    public void put(T entity, String key) {
+        remove(entity);
+        Set<String> trigrams = trigrams(key);
+        for (String trigram : trigrams) postings.computeIfAbsent(trigram, t -> new HashSet<>()).add(entity);
+        keys.put(entity, trigrams);
+        normalized.put(entity, Utils.normalize(key));
+    }
+
+    /**
+     * Removes an entity from the index
+     *
+     * @param entity entity
+     */
+    public void remove(T entity) {
+        Set<String> trigrams = keys.remove(entity);
+        normalized.remove(entity);
+        if (trigrams == null) return;
+        for (String trigram : trigrams) {
+            Set<T> entities = postings.get(trigram);
+            entities.remove(entity);
+            if (entities.isEmpty()) postings.remove(trigram);
+        }
+    }
+
+    /**
+     * @param query searched text
+     * @return the entities that may be similar to the query
+     */
+    public Set<T> candidates(String query) {
+        List<Set<T>> lists = new ArrayList<>();
+        Set<String> trigrams = trigrams(query);
+        for (String trigram : trigrams) {
+            Set<T> entities = postings.get(trigram);
+            if (entities != null) lists.add(entities);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        int minShared = Math.max(1, (int) Math.ceil(trigrams.size() * MIN_SHARED_RATIO));
+        int prefix = Math.min(lists.size(), trigrams.size() - minShared + 1);
+        Set<T> candidates = new LinkedHashSet<>();
+        for (int i = 0; i < prefix; i++) candidates.addAll(lists.get(i));
+        return candidates;
+    }
+
+    /**
+     * @param query     searched text
+     * @param threshold 0 to 1 similarity the indexed key of an entity has to exceed
+     * @return the entities similar to the query, see {@link Utils#isSimilar(char[], char[], double)}
+     */
+    public List<T> search(String query, double threshold) {
+        char[] normalizedQuery = Utils.normalize(query);
+        List<T> found = new ArrayList<>();
+        for (T entity : candidates(query)) {
+            if (Utils.isSimilar(normalized.get(entity), normalizedQuery, threshold)) found.add(entity);
+        }
+        return found;
+    }
+
+    /**
+     * @param text text
+     * @return the trigrams of the lowercase text padded with spaces, so even short words have some
+     */
+    static Set<String> trigrams(String text) {
+        String padded = "  " + text.toLowerCase(Locale.ROOT) + " ";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) trigrams.add(padded.substring(i, i + 3));
+        return trigrams;
+    }
+}
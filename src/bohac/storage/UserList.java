@@ -7,29 +7,39 @@ import java.io.File;
 import java.util.*;
 
 /**
- * The {@code UserList} represents a collection of {@code User} objects
+ * The {@code UserList} represents a collection of {@code User} objects, indexed by the id, the username and the email
  */
 public class UserList implements Iterable<User> {
-    private final List<User> users;
+    private final EntityRegistry<User> users;
+    private final EntityRegistry.UniqueIndex<User> byUsername;
+    private final EntityRegistry.UniqueIndex<User> byEmail;
+    /**
+     * Fuzzy search index of the full names
+     */
+    private final TrigramIndex<User> byName = new TrigramIndex<>();
 
     private UserList() {
-        this.users = new ArrayList<>();
+        this.users = new EntityRegistry<>(User::getId);
+        this.byUsername = users.addIndex("username", User::getUsername);
+        this.byEmail = users.addIndex("email", User::getEmail);
     }
 
     /**
      * Add a user to the collection
      *
      * @param user user
+     * @throws IllegalArgumentException if a user with the same id, username or email already exists
      */
-    public void add(User user) {
+    public synchronized void add(User user) {
         users.add(user);
+        byName.put(user, user.getFullName());
     }
 
     /**
      * @return the list of all users - thus the method name
      */
     public List<User> all() {
-        return new ArrayList<>(users);
+        return users.all();
     }
 
     /**
@@ -39,7 +49,7 @@ public class UserList implements Iterable<User> {
      * @return potentially empty {@code Optional<User>} object
      */
     public Optional<User> getByID(UUID uuid) {
-        return users.stream().filter(user -> user.getId().equals(uuid)).findFirst();
+        return users.get(uuid);
     }
 
     /**
@@ -49,7 +59,8 @@ public class UserList implements Iterable<User> {
      * @return potentially empty {@code Optional<User>} object
      */
     public Optional<User> getByLogin(String login) {
-        return users.stream().filter(user -> user.getEmail().equals(login) || user.getUsername().equals(login)).findFirst();
+        Optional<User> byLogin = byUsername.get(login);
+        return byLogin.isPresent() ? byLogin : byEmail.get(login);
     }
 
     /**
@@ -72,13 +83,10 @@ public class UserList implements Iterable<User> {
         Optional<User> byLogin = getByLogin(s);
         if (byLogin.isPresent()) return new User[]{byLogin.get()};
 
-        // similar name + last name
-        List<User> potentialUsers = new ArrayList<>();
-        for (User user : users) {
-            if (Utils.similarity(user.getFullName(), s) > 0.4) potentialUsers.add(user);
+        // similar name + last name, the name index is guarded by the monitor of the list
+        synchronized (this) {
+            return byName.search(s, 0.4).toArray(User[]::new);
         }
-
-        return potentialUsers.toArray(User[]::new);
     }
 
     /**
@@ -93,20 +101,19 @@ public class UserList implements Iterable<User> {
         if (!dataFolder.exists()) {
             Utils.printDebugMessage("User data folder not found, creating..." + (dataFolder.mkdir() ? "done" : "error"));
         }
-        File[] userFiles = dataFolder.listFiles();
-        if (userFiles != null) {
-            if (userFiles.length == 0) {
-                User.DEFAULT_USERS.forEach(user -> {
-                    Utils.printDebugMessage("Creating a default user: " + user);
-                    users.add(user);
-                    user.save();
-                });
-            }
-
-            for (File userFile : userFiles) {
-                Utils.printDebugMessage(String.format("Loading user file %s", userFile));
-                Utils.loadFile(userFile, object -> users.add(User.load(object)));
+        int files = EntityLoader.load(dataFolder.toPath(), BinaryCodec.Kind.USER, User::load, User::load, User::load, user -> {
+            try {
+                users.add(user);
+            } catch (IllegalArgumentException e) {
+                Utils.printDebugMessage(String.format("Skipping user %s: %s", user.getId(), e.getMessage()));
             }
+        }, "user");
+        if (files == 0) {
+            User.DEFAULT_USERS.forEach(user -> {
+                Utils.printDebugMessage("Creating a default user: " + user);
+                users.add(user);
+                user.save();
+            });
         }
         return users;
     }
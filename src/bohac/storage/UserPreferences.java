@@ -13,6 +13,11 @@ import java.util.Properties;
  * Stores per-user preferences. Extends from {@link Properties} class.
  */
 public class UserPreferences extends Properties implements JSONSerializable {
+    /**
+     * Whether the preferences changed since they were last saved
+     */
+    private boolean modified;
+
     /**
      * Set's a new preferred language for this user
      *
@@ -20,6 +25,7 @@ public class UserPreferences extends Properties implements JSONSerializable {
      */
     public void setPreferredLanguage(Locale locale) {
         setProperty("locale", locale.toString());
+        modified = true;
     }
 
     /**
@@ -53,6 +59,20 @@ public class UserPreferences extends Properties implements JSONSerializable {
         return userPreferences;
     }
 
+    /**
+     * @return whether the preferences changed since they were last saved
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Marks the preferences as saved, see {@link #isModified()}
+     */
+    public void markSaved() {
+        modified = false;
+    }
+
     @Override
     public JSONObject toJSON() {
         JSONObject object = new JSONObject();
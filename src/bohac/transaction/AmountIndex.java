@@ -0,0 +1,226 @@
+package bohac.transaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Positions of the transactions of a history in the {@link Transaction#AMOUNT} order, the largest amount first and
+ * transactions with the same amount in the order they were posted in - the order a stable sort of the history gives.
+ * A page is found by a binary search, without sorting or copying the history.
+ * <p>
+ * The index is a sorted run of fixed-width entries (amount and position) of the oldest transactions, and a small sorted
+ * tail of the ones posted since the run was written. The transactions posted since the last page are added to the tail
+ * when the next one is asked for. Once the tail grows to an eighth of the run, it's merged into a new run - every
+ * transaction is rewritten O(log n) times, and at most about an eighth of the index is held on the heap.
+ * <p>
+ * The run of a history kept in a segment file is kept in a file next to it and read through a mapping, so it's not
+ * rebuilt when the bank starts, and it's not held on the heap. The run of a history held in memory is held in memory
+ * as well. The index is safe to be used from different threads.
+ * <p>
+ * Run file layout (big endian): magic (4 bytes), version (4), how many transactions the run indexes (4), fingerprint
+ * of the first and the last of them (8), then the entries - amount (8, minor units) and position (4) - in the index
+ * order. A run whose transactions the history doesn't have or doesn't start with is rebuilt.
+ */
+public final class AmountIndex {
+    private record Key(long amount, int position) {
+    }
+
+    private static final Comparator<Key> ORDER = Comparator.comparingLong(Key::amount).reversed()
+            .thenComparingInt(Key::position);
+    private static final int MAGIC = 0x42544149;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 20;
+    private static final int ENTRY_SIZE = 12;
+    /**
+     * How large the tail can grow before it's merged, however short the run is
+     */
+    private static final int MIN_TAIL_SIZE = 1024;
+
+    private final List<Transaction> history;
+    private final Path file;
+    private ByteBuffer run;
+    private int runSize;
+    private final NavigableSet<Key> tail = new TreeSet<>(ORDER);
+    private int indexed;
+
+    /**
+     * Indexes a transaction history held in memory
+     *
+     * @param history transaction history, append only
+     */
+    public AmountIndex(List<Transaction> history) {
+        this(history, null);
+    }
+
+    /**
+     * Indexes a transaction history, the run written by an earlier instance is reused
+     *
+     * @param history transaction history, append only
+     * @param file    file the run is kept in, null to keep it in memory
+     */
+    public AmountIndex(List<Transaction> history, Path file) {
+        this.history = history;
+        this.file = file;
+        if (file != null && Files.exists(file)) load();
+        this.indexed = runSize;
+    }
+
+    /**
+     * @param pageSize how many transactions per page
+     * @param cursor   cursor of the page, null for the first one
+     * @return the page
+     */
+    public synchronized TransactionPage page(int pageSize, String cursor) {
+        TransactionPage.checkPageSize(pageSize);
+        update();
+        int next = 0;
+        NavigableSet<Key> rest = tail;
+        if (cursor != null) {
+            ByteBuffer buffer = TransactionPage.decode(cursor, TransactionPage.Kind.AMOUNT);
+            int position = buffer.getInt();
+            Key after = new Key(buffer.getLong(), position);
+            next = after(after);
+            rest = tail.tailSet(after, false);
+        }
+        Iterator<Key> iterator = rest.iterator();
+        Key added = iterator.hasNext() ? iterator.next() : null;
+
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        Key last = null;
+        while (transactions.size() < pageSize && (next < runSize || added != null)) {
+            if (next < runSize && (added == null || ORDER.compare(entry(next), added) < 0)) last = entry(next++);
+            else {
+                last = added;
+                added = iterator.hasNext() ? iterator.next() : null;
+            }
+            transactions.add(history.get(last.position()));
+        }
+        String cursorOfNext = last != null && (next < runSize || added != null)
+                ? TransactionPage.encode(TransactionPage.Kind.AMOUNT, last.position(), last.amount()) : null;
+        return new TransactionPage(transactions, cursorOfNext);
+    }
+
+    /**
+     * Indexes the transactions posted since the last update
+     */
+    private void update() {
+        int size = history.size();
+        for (; indexed < size; indexed++) {
+            tail.add(new Key(history.get(indexed).getAmount(), indexed));
+            if (tail.size() >= Math.max(MIN_TAIL_SIZE, runSize / 8)) merge();
+        }
+    }
+
+    /**
+     * @return index of the first entry of the run following the key
+     */
+    private int after(Key key) {
+        int low = 0, high = runSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ORDER.compare(entry(middle), key) <= 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private Key entry(int index) {
+        int offset = HEADER_SIZE + index * ENTRY_SIZE;
+        return new Key(run.getLong(offset), run.getInt(offset + 8));
+    }
+
+    /**
+     * Merges the tail into a new run
+     */
+    private void merge() {
+        int size = runSize + tail.size();
+        Path temporary = file == null ? null : file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer merged = temporary == null ? ByteBuffer.allocate(HEADER_SIZE + size * ENTRY_SIZE) : map(temporary, size);
+        merged.putInt(MAGIC).putInt(VERSION).putInt(size).putLong(fingerprint(size));
+        Iterator<Key> iterator = tail.iterator();
+        Key added = iterator.hasNext() ? iterator.next() : null;
+        for (int i = 0; i < runSize; i++) {
+            Key key = entry(i);
+            for (; added != null && ORDER.compare(added, key) < 0; added = iterator.hasNext() ? iterator.next() : null)
+                merged.putLong(added.amount()).putInt(added.position());
+            merged.putLong(key.amount()).putInt(key.position());
+        }
+        for (; added != null; added = iterator.hasNext() ? iterator.next() : null)
+            merged.putLong(added.amount()).putInt(added.position());
+
+        if (temporary != null) {
+            ((MappedByteBuffer) merged).force();
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        run = merged;
+        runSize = size;
+        tail.clear();
+    }
+
+    /**
+     * Creates a run file of the given number of entries and maps it, the file is written to the storage device once
+     * the mapping is filled in
+     */
+    private static MappedByteBuffer map(Path path, int entries) {
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) entries * ENTRY_SIZE);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return fingerprint of the first transactions of the history, cheap to check but unlikely to match a different
+     * history
+     */
+    private long fingerprint(int size) {
+        if (size == 0) return 0;
+        return 31 * fingerprint(history.get(0)) + fingerprint(history.get(size - 1));
+    }
+
+    private static long fingerprint(Transaction transaction) {
+        UUID id = transaction.getId();
+        long bits = id == null ? 0 : id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        return bits ^ transaction.getAmount();
+    }
+
+    /**
+     * Maps the run written by an earlier instance, unless it's damaged or it wasn't built from the first transactions
+     * of this history
+     */
+    private void load() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || (length - HEADER_SIZE) % ENTRY_SIZE != 0) return;
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int entries = (int) ((length - HEADER_SIZE) / ENTRY_SIZE);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION || mapped.getInt(8) != entries
+                    || entries > history.size() || mapped.getLong(12) != fingerprint(entries)) return;
+            run = mapped;
+            runSize = entries;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -18,15 +18,20 @@ import java.util.UUID;
  * Represents an incoming transaction
  */
 public final class IncomingTransaction implements Transaction {
+    private final UUID id;
     private final UUID sender;
     private final LocalDateTime dateTime;
-    private final float amount;
+    /**
+     * Amount in the minor units of the currency, see {@link bohac.entity.account.Money}
+     */
+    private final long amount;
     private final Currency currency;
 
     /**
      * This constructor is used when loading data from the disk
      */
-    public IncomingTransaction(UUID senderID, LocalDateTime dateTime, float amount, Currency currency) {
+    public IncomingTransaction(UUID id, UUID senderID, LocalDateTime dateTime, long amount, Currency currency) {
+        this.id = id;
         this.sender = senderID;
         this.dateTime = dateTime;
         this.amount = amount;
@@ -36,25 +41,36 @@ public final class IncomingTransaction implements Transaction {
     /**
      * This constructor is called when a user authorizes a transaction
      */
-    public IncomingTransaction(Account sender, float amount, Currency currency) {
+    public IncomingTransaction(UUID id, Account sender, long amount, Currency currency) {
+        this.id = id;
         this.sender = sender.getId();
         this.dateTime = LocalDateTime.now();
         this.amount = amount;
         this.currency = currency;
     }
 
+    @Override
+    public UUID getId() {
+        return id;
+    }
+
     @Override
     public Account getTarget() {
         return Bank.accounts.getByID(sender).orElse(null);
     }
 
+    @Override
+    public UUID getTargetId() {
+        return sender;
+    }
+
     @Override
     public LocalDateTime getDateTime() {
         return dateTime;
     }
 
     @Override
-    public float getAmount() {
+    public long getAmount() {
         return amount;
     }
 
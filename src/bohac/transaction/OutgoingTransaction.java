@@ -16,20 +16,28 @@ import java.util.Map;
 import java.util.UUID;
 
 /**
- * Represents an outgoing transaction
+ * Represents an outgoing transaction. A transaction loaded from the disk only knows the id of the authorizing user,
+ * the user is resolved on the first {@link #getUser()}.
  */
 public final class OutgoingTransaction implements Transaction {
+    private final UUID id;
     private final UUID receiver;
-    private final User user;
+    private final UUID userID;
+    private User user;
     private final LocalDateTime dateTime;
-    private final float amount;
+    /**
+     * Amount in the minor units of the currency, see {@link bohac.entity.account.Money}
+     */
+    private final long amount;
     private final Currency currency;
 
     /**
      * This constructor is used when loading data from the disk
      */
-    public OutgoingTransaction(UUID userID, UUID receiverID, LocalDateTime dateTime, float amount, Currency currency) {
-        this.user = Bank.users.getByID(userID).orElse(null);
+    public OutgoingTransaction(UUID id, UUID userID, UUID receiverID, LocalDateTime dateTime, long amount,
+                               Currency currency) {
+        this.id = id;
+        this.userID = userID;
         this.receiver = receiverID;
         this.dateTime = dateTime;
         this.amount = amount;
@@ -39,14 +47,19 @@ public final class OutgoingTransaction implements Transaction {
     /**
      * This constructor is called when a user authorizes a transaction
      */
-    public OutgoingTransaction(User user, Account receiver, Account sender, float amount, Currency currency) {
+    public OutgoingTransaction(UUID id, User user, Account receiver, long amount, Currency currency) {
+        this.id = id;
+        this.userID = user.getId();
         this.user = user;
         this.receiver = receiver.getId();
         this.dateTime = LocalDateTime.now();
         this.amount = amount;
         this.currency = currency;
+    }
 
-        receiver.addTransaction(new IncomingTransaction(sender, amount, currency));
+    @Override
+    public UUID getId() {
+        return id;
     }
 
     @Override
@@ -54,13 +67,33 @@ public final class OutgoingTransaction implements Transaction {
         return Bank.accounts.getByID(receiver).orElse(null);
     }
 
+    @Override
+    public UUID getTargetId() {
+        return receiver;
+    }
+
+    /**
+     * @return the user who authorized this transaction
+     */
+    public User getUser() {
+        if (user == null && userID != null) user = Bank.users.getByID(userID).orElse(null);
+        return user;
+    }
+
+    /**
+     * @return id of the user who authorized this transaction
+     */
+    public UUID getUserID() {
+        return userID;
+    }
+
     @Override
     public LocalDateTime getDateTime() {
         return dateTime;
     }
 
     @Override
-    public float getAmount() {
+    public long getAmount() {
         return amount;
     }
 
@@ -73,7 +106,7 @@ public final class OutgoingTransaction implements Transaction {
     public JSONObject toJSON() {
         return Transaction.super.toJSON()
                 .put("type", "OUTGOING")
-                .put("user", user.getId());
+                .put("user", userID);
     }
 
     @Override
@@ -83,7 +116,7 @@ public final class OutgoingTransaction implements Transaction {
                         "amount", new Balance(currency, amount),
                         "account", receiver,
                         "time", Utils.localizedDateTime(getDateTime(), FormatStyle.SHORT),
-                        "user", user.getUsername()
+                        "user", getUser().getUsername()
                 ));
     }
 }
@@ -0,0 +1,328 @@
+package bohac.transaction;
+
+import bohac.Bank;
+import bohac.entity.User;
+import bohac.entity.account.Account;
+import bohac.entity.account.IdempotencyIndex;
+import bohac.entity.account.Money;
+import bohac.entity.account.TransferEngine;
+import bohac.util.Utils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Submits many payments at once, i.e. a payroll. All the instructions are validated before any of them is executed,
+ * the accounts and the users are looked up by their indexes. The valid ones are submitted in their order by
+ * {@link Account#submitPayment(long, Account, User, String)} and every changed account is saved once for the whole
+ * batch. An instruction with an idempotency key that has been submitted already - i.e. when a failed batch is run
+ * again - is not paid again, it's reported with the outcome of the original payment.
+ * <p>
+ * It's also a command line tool for the operators: {@code PaymentBatch <payments.csv|payments.json> [report.csv]}.
+ * A CSV file has the columns {@code sender,receiver,amount,user[,key]}, a header line is optional. A JSON file is an
+ * array of objects with the same keys. The senders and receivers are account ids, the user is the login of an owner of
+ * the sender account, the amount is a decimal in the currency of the sender account, the optional key is the
+ * idempotency key of the payment.
+ */
+public final class PaymentBatch {
+    private static final String HEADER = "sender,receiver,amount,user,key";
+    private static final String HEADER_WITHOUT_KEY = "sender,receiver,amount,user";
+
+    /**
+     * A single payment instruction as it was read, it's validated by {@link #execute(List)}
+     *
+     * @param line line of the CSV file / position in the JSON array, starting at 1
+     * @param key  idempotency key, empty if there is none
+     */
+    public record Instruction(int line, String sender, String receiver, String amount, String user, String key) {
+    }
+
+    /**
+     * Outcome of a single instruction
+     *
+     * @param receipt outcome of the payment, null if the instruction was rejected by the validation or the payment
+     *                failed (i.e. no exchange rate)
+     * @param error   why the instruction was rejected or failed, null otherwise
+     */
+    public record Line(Instruction instruction, IdempotencyIndex.Receipt receipt, String error) {
+        /**
+         * @return outcome of the payment, null if the instruction was rejected or the payment failed
+         */
+        public TransferEngine.Result result() {
+            return receipt != null ? receipt.result() : null;
+        }
+
+        public boolean completed() {
+            return receipt != null && receipt.completed();
+        }
+
+        @Override
+        public String toString() {
+            if (receipt == null) return String.format("%d: REJECTED - %s", instruction.line(), error);
+            return String.format("%d: %s%s", instruction.line(), receipt.result(), receipt.replayed() ? " (already submitted)" : "");
+        }
+    }
+
+    /**
+     * Outcome of the whole batch
+     *
+     * @param lines             outcomes of all the instructions, in their order
+     * @param validationNanos   how long the validation took
+     * @param executionNanos    how long the payments took
+     * @param persistenceNanos  how long saving the changed accounts took
+     * @param accountsPersisted how many accounts were saved
+     */
+    public record Report(List<Line> lines, long validationNanos, long executionNanos, long persistenceNanos,
+                         int accountsPersisted) {
+        /**
+         * @return how many of the valid instructions ended with each result
+         */
+        public Map<TransferEngine.Result, Integer> counts() {
+            Map<TransferEngine.Result, Integer> counts = new EnumMap<>(TransferEngine.Result.class);
+            for (Line line : lines) if (line.result() != null) counts.merge(line.result(), 1, Integer::sum);
+            return counts;
+        }
+
+        /**
+         * @return how many instructions had been submitted already
+         */
+        public long replayed() {
+            return lines.stream().filter(line -> line.receipt() != null && line.receipt().replayed()).count();
+        }
+
+        /**
+         * @return how many instructions were rejected by the validation or failed
+         */
+        public long rejected() {
+            return lines.stream().filter(line -> line.result() == null).count();
+        }
+
+        /**
+         * @return the report as CSV, a line per instruction
+         */
+        public String toCSV() {
+            StringBuilder builder = new StringBuilder("line,").append(HEADER).append(",result,transaction,replayed,error\n");
+            for (Line line : lines) {
+                Instruction instruction = line.instruction();
+                IdempotencyIndex.Receipt receipt = line.receipt();
+                builder.append(instruction.line()).append(',')
+                        .append(instruction.sender()).append(',')
+                        .append(instruction.receiver()).append(',')
+                        .append(instruction.amount()).append(',')
+                        .append(instruction.user()).append(',')
+                        .append(instruction.key()).append(',')
+                        .append(receipt != null ? receipt.result() : "REJECTED").append(',')
+                        .append(receipt != null && receipt.transactionId() != null ? receipt.transactionId() : "").append(',')
+                        .append(receipt != null && receipt.replayed()).append(',')
+                        .append(line.error() != null ? line.error().replace(',', ';') : "").append('\n');
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d instructions, %d rejected, %s, %d already submitted; validation %d ms, execution %d ms, persistence %d ms (%d accounts)",
+                    lines.size(), rejected(), counts(), replayed(), validationNanos / 1_000_000, executionNanos / 1_000_000,
+                    persistenceNanos / 1_000_000, accountsPersisted);
+        }
+    }
+
+    /**
+     * A validated instruction
+     */
+    private record Payment(int index, Account sender, Account receiver, long amount, User user, String key) {
+    }
+
+    private PaymentBatch() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Reads the instructions from a CSV or a JSON file, by its extension
+     *
+     * @param path file
+     * @return the instructions
+     */
+    public static List<Instruction> read(Path path) {
+        String content;
+        try {
+            content = Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return path.toString().toLowerCase().endsWith(".json") ? parseJSON(content) : parseCSV(content);
+    }
+
+    /**
+     * @param content CSV with the columns {@code sender,receiver,amount,user[,key]}, the header line is optional
+     * @return the instructions, lines with a wrong number of columns are kept with the missing columns empty
+     */
+    public static List<Instruction> parseCSV(String content) {
+        List<Instruction> instructions = new ArrayList<>();
+        String[] lines = content.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].strip();
+            if (line.isEmpty() || (i == 0 && (line.equalsIgnoreCase(HEADER) || line.equalsIgnoreCase(HEADER_WITHOUT_KEY))))
+                continue;
+            String[] columns = line.split(",", -1);
+            instructions.add(new Instruction(i + 1, column(columns, 0), column(columns, 1), column(columns, 2),
+                    column(columns, 3), column(columns, 4)));
+        }
+        return instructions;
+    }
+
+    /**
+     * @param content JSON array of objects with the keys {@code sender}, {@code receiver}, {@code amount},
+     *                {@code user} and optionally {@code key}
+     * @return the instructions
+     */
+    public static List<Instruction> parseJSON(String content) {
+        JSONArray array = new JSONArray(content);
+        List<Instruction> instructions = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.optJSONObject(i);
+            if (object == null) object = new JSONObject();
+            instructions.add(new Instruction(i + 1, object.optString("sender"), object.optString("receiver"),
+                    object.has("amount") ? String.valueOf(object.get("amount")) : "", object.optString("user"),
+                    object.optString("key")));
+        }
+        return instructions;
+    }
+
+    private static String column(String[] columns, int index) {
+        return index < columns.length ? columns[index].strip() : "";
+    }
+
+    /**
+     * Validates all the instructions, then executes the valid ones in their order and saves the changed accounts
+     *
+     * @param instructions instructions
+     * @return the report
+     */
+    public static Report execute(List<Instruction> instructions) {
+        long start = System.nanoTime();
+        Line[] lines = new Line[instructions.size()];
+        List<Payment> payments = new ArrayList<>(instructions.size());
+        for (int i = 0; i < lines.length; i++) {
+            Instruction instruction = instructions.get(i);
+            try {
+                payments.add(validate(i, instruction));
+            } catch (IllegalArgumentException e) {
+                lines[i] = new Line(instruction, null, e.getMessage());
+            }
+        }
+
+        long validated = System.nanoTime();
+        Set<Account> changed = new LinkedHashSet<>();
+        // Submitted all at once, so that the ledger can post them in parallel
+        List<CompletableFuture<IdempotencyIndex.Receipt>> receipts = new ArrayList<>(payments.size());
+        for (Payment payment : payments) {
+            try {
+                receipts.add(payment.sender().submitPayment(payment.amount(), payment.receiver(), payment.user(), payment.key()));
+            } catch (RuntimeException e) {
+                receipts.add(CompletableFuture.failedFuture(e));
+            }
+        }
+        for (int i = 0; i < payments.size(); i++) {
+            Payment payment = payments.get(i);
+            try {
+                complete(lines, instructions, payment, receipts.get(i).join(), changed);
+            } catch (CompletionException e) {
+                lines[payment.index()] = new Line(instructions.get(payment.index()), null, failure(e.getCause()));
+            }
+        }
+
+        long executed = System.nanoTime();
+        changed.forEach(Account::save);
+        // The payments have to be on the disk before they're reported
+        if (Bank.persistence != null) Bank.persistence.barrier();
+        long persisted = System.nanoTime();
+        return new Report(List.of(lines), validated - start, executed - validated, persisted - executed, changed.size());
+    }
+
+    private static String failure(Throwable e) {
+        Utils.printDebugMessage("Payment failed: " + e);
+        return "failed: " + e.getMessage();
+    }
+
+    private static void complete(Line[] lines, List<Instruction> instructions, Payment payment,
+                                 IdempotencyIndex.Receipt receipt, Set<Account> changed) {
+        lines[payment.index()] = new Line(instructions.get(payment.index()), receipt, null);
+        if (!receipt.completed() || receipt.replayed()) return;
+        changed.add(payment.sender());
+        changed.add(payment.receiver());
+    }
+
+    /**
+     * @return the validated payment
+     * @throws IllegalArgumentException why the instruction is not valid
+     */
+    private static Payment validate(int index, Instruction instruction) {
+        Account sender = account(instruction.sender(), "sender");
+        Account receiver = account(instruction.receiver(), "receiver");
+        if (sender.equals(receiver)) throw new IllegalArgumentException("sender and receiver are the same account");
+        User user = Bank.users.getByLogin(instruction.user())
+                .orElseThrow(() -> new IllegalArgumentException("unknown user " + instruction.user()));
+        if (!sender.getOwners().contains(user))
+            throw new IllegalArgumentException(String.format("user %s doesn't own the sender account", instruction.user()));
+
+        long amount;
+        try {
+            amount = Money.of(new BigDecimal(instruction.amount()), sender.getCurrency(), RoundingMode.UNNECESSARY);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid amount " + instruction.amount());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("amount %s doesn't fit %s", instruction.amount(), sender.getCurrency()));
+        }
+        if (amount <= 0) throw new IllegalArgumentException("amount has to be positive");
+        return new Payment(index, sender, receiver, amount, user, instruction.key().isEmpty() ? null : instruction.key());
+    }
+
+    private static Account account(String id, String role) {
+        Optional<Account> account;
+        try {
+            account = Bank.accounts.getByID(UUID.fromString(id));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("invalid %s account id %s", role, id));
+        }
+        Account found = account.orElseThrow(() -> new IllegalArgumentException(String.format("unknown %s account %s", role, id)));
+        if (found.isClosed()) throw new IllegalArgumentException(String.format("%s account %s is closed", role, id));
+        return found;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: PaymentBatch <payments.csv|payments.json> [report.csv]");
+            return;
+        }
+        List<Instruction> instructions = read(Paths.get(args[0]));
+
+        Bank.RATES.start();
+        Bank.open();
+
+        Report report = execute(instructions);
+        for (Line line : report.lines()) if (!line.completed()) System.out.println(line);
+        System.out.println(report);
+        if (args.length > 1) Utils.writeFile(Paths.get(args[1]), report.toCSV());
+
+        Bank.close();
+        Bank.RATES.close();
+    }
+}
@@ -0,0 +1,117 @@
+package bohac.transaction;
+
+import bohac.Configuration;
+import bohac.entity.account.Money;
+import bohac.storage.BinaryCodec;
+import bohac.storage.BinarySerializable;
+import bohac.storage.JSONPullParser;
+import bohac.storage.JSONSerializable;
+import bohac.util.Utils;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Currency;
+import java.util.UUID;
+
+/**
+ * The incoming leg of a payment whose sender has been debited, but whose receiver hasn't been credited yet. It's kept
+ * with the sender account and persisted together with the outgoing leg, so a payment interrupted by a crash is
+ * credited when the data is loaded again.
+ *
+ * @param id             transfer id, shared by both legs
+ * @param receiver       receiver account id
+ * @param amount         amount in the minor units of the sender account currency, see {@link Money}
+ * @param currency       currency of the sender account
+ * @param credit         amount given to the receiver in the minor units of its currency
+ * @param creditCurrency currency of the receiver account
+ * @param dateTime       time the sender was debited at
+ */
+public record PendingCredit(UUID id, UUID receiver, long amount, Currency currency, long credit, Currency creditCurrency,
+                            LocalDateTime dateTime) implements JSONSerializable, BinarySerializable {
+    @Override
+    public JSONObject toJSON() {
+        return new JSONObject()
+                .put("id", id)
+                .put("receiver", receiver)
+                .put("amount", Money.toDecimal(amount, currency))
+                .put("currency", currency)
+                .put("credit", Money.toDecimal(credit, creditCurrency))
+                .put("credit_currency", creditCurrency)
+                .put("datetime", Utils.toEpoch(dateTime));
+    }
+
+    @Override
+    public void write(BinaryCodec.Writer writer) {
+        writer.writeUUID(id)
+                .writeUUID(receiver)
+                .writeVarLong(amount)
+                .writeCurrency(currency)
+                .writeVarLong(credit)
+                .writeCurrency(creditCurrency)
+                .writeVarLong(Utils.toEpoch(dateTime));
+    }
+
+    /**
+     * Static loader method
+     *
+     * @param object instance of {@code JSONObject}
+     * @return {@code PendingCredit} instance
+     */
+    public static PendingCredit load(JSONObject object) {
+        Currency currency = Currency.getInstance(object.getString("currency"));
+        Currency creditCurrency = Currency.getInstance(object.getString("credit_currency"));
+        return new PendingCredit(
+                UUID.fromString(object.getString("id")),
+                UUID.fromString(object.getString("receiver")),
+                Money.of(object.getBigDecimal("amount"), currency, Configuration.MONEY_ROUNDING),
+                currency,
+                Money.of(object.getBigDecimal("credit"), creditCurrency, Configuration.MONEY_ROUNDING),
+                creditCurrency,
+                Utils.parseEpoch(object.getLong("datetime")));
+    }
+
+    /**
+     * Static loader method - streaming
+     *
+     * @param parser parser positioned at the start of the pending credit object
+     * @return {@code PendingCredit} instance
+     */
+    public static PendingCredit load(JSONPullParser parser) {
+        UUID id = null, receiver = null;
+        BigDecimal amount = BigDecimal.ZERO, credit = BigDecimal.ZERO;
+        Currency currency = null, creditCurrency = null;
+        long dateTime = 0;
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "id" -> id = parser.nextUUID();
+                case "receiver" -> receiver = parser.nextUUID();
+                case "amount" -> amount = parser.nextDecimal();
+                case "currency" -> currency = Currency.getInstance(parser.nextString());
+                case "credit" -> credit = parser.nextDecimal();
+                case "credit_currency" -> creditCurrency = Currency.getInstance(parser.nextString());
+                case "datetime" -> dateTime = parser.nextLong();
+                default -> parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return new PendingCredit(id, receiver, Money.of(amount, currency, Configuration.MONEY_ROUNDING), currency,
+                Money.of(credit, creditCurrency, Configuration.MONEY_ROUNDING), creditCurrency, Utils.parseEpoch(dateTime));
+    }
+
+    /**
+     * Static loader method - binary format
+     *
+     * @param reader payload reader positioned at the start of the pending credit
+     * @return {@code PendingCredit} instance
+     */
+    public static PendingCredit load(BinaryCodec.Reader reader) {
+        UUID id = reader.readUUID(), receiver = reader.readUUID();
+        long amount = reader.readVarLong();
+        Currency currency = reader.readCurrency();
+        long credit = reader.readVarLong();
+        Currency creditCurrency = reader.readCurrency();
+        return new PendingCredit(id, receiver, amount, currency, credit, creditCurrency, Utils.parseEpoch(reader.readVarLong()));
+    }
+}
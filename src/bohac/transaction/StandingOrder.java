@@ -0,0 +1,182 @@
+package bohac.transaction;
+
+import bohac.Configuration;
+import bohac.entity.account.Money;
+import bohac.storage.BinaryCodec;
+import bohac.storage.BinarySerializable;
+import bohac.storage.JSONPullParser;
+import bohac.storage.JSONSerializable;
+import bohac.util.Utils;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Currency;
+import java.util.UUID;
+
+/**
+ * A payment scheduled for later - once at a given time, or repeatedly from a given time on. It's kept with the sender
+ * account and executed by the {@link StandingOrderScheduler}. The order itself never changes, every execution
+ * replaces it with a copy counting one more execution.
+ *
+ * @param id         order id
+ * @param sender     sender account id
+ * @param receiver   receiver account id
+ * @param amount     amount in the minor units of the currency, see {@link Money}
+ * @param currency   currency of the sender account
+ * @param user       id of the user who authorized the order
+ * @param first      time of the first execution
+ * @param recurrence how often the order is executed
+ * @param executions how many times the order was executed already
+ */
+public record StandingOrder(UUID id, UUID sender, UUID receiver, long amount, Currency currency, UUID user,
+                            LocalDateTime first, Recurrence recurrence, int executions)
+        implements JSONSerializable, BinarySerializable {
+    /**
+     * How often a standing order is executed
+     */
+    public enum Recurrence {
+        ONCE, DAILY, WEEKLY, MONTHLY;
+
+        /**
+         * @param first time of the first execution
+         * @param n     execution number, starting at 0
+         * @return time of the {@code n}-th execution, counted from the first one so that i.e. a monthly order on the
+         * 31st returns back to the 31st after a shorter month
+         */
+        public LocalDateTime occurrence(LocalDateTime first, int n) {
+            return switch (this) {
+                case ONCE, DAILY -> first.plusDays(n);
+                case WEEKLY -> first.plusWeeks(n);
+                case MONTHLY -> first.plusMonths(n);
+            };
+        }
+    }
+
+    /**
+     * Creates a new standing order
+     *
+     * @return new {@link StandingOrder}
+     */
+    public static StandingOrder create(UUID sender, UUID receiver, long amount, Currency currency, UUID user,
+                                       LocalDateTime first, Recurrence recurrence) {
+        return new StandingOrder(UUID.randomUUID(), sender, receiver, amount, currency, user, first, recurrence, 0);
+    }
+
+    /**
+     * @return time of the next execution
+     */
+    public LocalDateTime next() {
+        return recurrence.occurrence(first, executions);
+    }
+
+    /**
+     * @return whether the order won't be executed anymore
+     */
+    public boolean isFinished() {
+        return recurrence == Recurrence.ONCE && executions > 0;
+    }
+
+    /**
+     * @return copy of this order with one more execution
+     */
+    public StandingOrder executed() {
+        return new StandingOrder(id, sender, receiver, amount, currency, user, first, recurrence, executions + 1);
+    }
+
+    @Override
+    public JSONObject toJSON() {
+        return new JSONObject()
+                .put("id", id)
+                .put("sender", sender)
+                .put("receiver", receiver)
+                .put("amount", Money.toDecimal(amount, currency))
+                .put("currency", currency)
+                .put("user", user)
+                .put("first", Utils.toEpoch(first))
+                .put("recurrence", recurrence)
+                .put("executions", executions);
+    }
+
+    @Override
+    public void write(BinaryCodec.Writer writer) {
+        writer.writeUUID(id)
+                .writeUUID(sender)
+                .writeUUID(receiver)
+                .writeVarLong(amount)
+                .writeCurrency(currency)
+                .writeUUID(user)
+                .writeVarLong(Utils.toEpoch(first))
+                .writeByte(recurrence.ordinal())
+                .writeVarLong(executions);
+    }
+
+    /**
+     * Static loader method
+     *
+     * @param object instance of {@code JSONObject}
+     * @return {@code StandingOrder} instance
+     */
+    public static StandingOrder load(JSONObject object) {
+        Currency currency = Currency.getInstance(object.getString("currency"));
+        return new StandingOrder(
+                UUID.fromString(object.getString("id")),
+                UUID.fromString(object.getString("sender")),
+                UUID.fromString(object.getString("receiver")),
+                Money.of(object.getBigDecimal("amount"), currency, Configuration.MONEY_ROUNDING),
+                currency,
+                UUID.fromString(object.getString("user")),
+                Utils.parseEpoch(object.getLong("first")),
+                Recurrence.valueOf(object.getString("recurrence")),
+                object.optInt("executions"));
+    }
+
+    /**
+     * Static loader method - streaming
+     *
+     * @param parser parser positioned at the start of the standing order object
+     * @return {@code StandingOrder} instance
+     */
+    public static StandingOrder load(JSONPullParser parser) {
+        UUID id = null, sender = null, receiver = null, user = null;
+        BigDecimal amount = BigDecimal.ZERO;
+        Currency currency = null;
+        long first = 0;
+        Recurrence recurrence = Recurrence.ONCE;
+        int executions = 0;
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "id" -> id = parser.nextUUID();
+                case "sender" -> sender = parser.nextUUID();
+                case "receiver" -> receiver = parser.nextUUID();
+                case "amount" -> amount = parser.nextDecimal();
+                case "currency" -> currency = Currency.getInstance(parser.nextString());
+                case "user" -> user = parser.nextUUID();
+                case "first" -> first = parser.nextLong();
+                case "recurrence" -> recurrence = Recurrence.valueOf(parser.nextString());
+                case "executions" -> executions = (int) parser.nextLong();
+                default -> parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return new StandingOrder(id, sender, receiver, Money.of(amount, currency, Configuration.MONEY_ROUNDING), currency,
+                user, Utils.parseEpoch(first), recurrence, executions);
+    }
+
+    /**
+     * Static loader method - binary format
+     *
+     * @param reader payload reader positioned at the start of the standing order
+     * @return {@code StandingOrder} instance
+     */
+    public static StandingOrder load(BinaryCodec.Reader reader) {
+        UUID id = reader.readUUID(), sender = reader.readUUID(), receiver = reader.readUUID();
+        long amount = reader.readVarLong();
+        Currency currency = reader.readCurrency();
+        UUID user = reader.readUUID();
+        LocalDateTime first = Utils.parseEpoch(reader.readVarLong());
+        Recurrence recurrence = Recurrence.values()[reader.readByte()];
+        return new StandingOrder(id, sender, receiver, amount, currency, user, first, recurrence, reader.readVarInt());
+    }
+}
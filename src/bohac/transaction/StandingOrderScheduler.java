@@ -0,0 +1,231 @@
+package bohac.transaction;
+
+import bohac.Bank;
+import bohac.Configuration;
+import bohac.entity.User;
+import bohac.entity.account.Account;
+import bohac.entity.account.Balance;
+import bohac.entity.account.TransferEngine;
+import bohac.util.TimingWheel;
+import bohac.util.Utils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes the {@link StandingOrder}s of all the accounts when they're due. The pending orders are kept in a
+ * {@link TimingWheel}, so scheduling, cancelling and expiring an order takes constant time however many there are.
+ * Once every {@link Configuration#STANDING_ORDER_TICK} the wheel is advanced and the expired orders join the queue of
+ * the due orders.
+ * <p>
+ * At most {@link Configuration#STANDING_ORDER_BATCH_SIZE} due orders are executed per tick, and every account the
+ * batch changed is saved once. After a downtime the missed orders - every missed execution of a recurring one - are
+ * caught up a batch per tick, rather than all at once. An order that can't be paid (insufficient funds, no exchange
+ * rate) skips that execution, an order whose accounts or user don't exist anymore is cancelled.
+ */
+public final class StandingOrderScheduler implements AutoCloseable {
+    private final long tickSeconds;
+    private final TimingWheel<StandingOrder> wheel;
+    private final Map<UUID, TimingWheel.Timer<StandingOrder>> timers = new HashMap<>();
+    private final ArrayDeque<StandingOrder> due = new ArrayDeque<>();
+    private final ScheduledExecutorService executor;
+    private final LongAdder completed = new LongAdder(), skipped = new LongAdder(), cancelled = new LongAdder();
+
+    private StandingOrderScheduler() {
+        this.tickSeconds = Math.max(1, Configuration.STANDING_ORDER_TICK.toSeconds());
+        this.wheel = new TimingWheel<>(tick());
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "standing-orders");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules the standing orders of all the accounts and starts executing them. Acts as a static factory method
+     * also.
+     *
+     * @param accounts all the accounts
+     * @return the started {@link StandingOrderScheduler}
+     */
+    public static StandingOrderScheduler start(Iterable<Account> accounts) {
+        StandingOrderScheduler scheduler = new StandingOrderScheduler();
+        for (Account account : accounts) account.getStandingOrders().forEach(scheduler::schedule);
+        Utils.printDebugMessage(String.format("Standing orders: %d scheduled, %d due", scheduler.wheel.size(), scheduler.due.size()));
+        long period = Configuration.STANDING_ORDER_TICK.toMillis();
+        scheduler.executor.scheduleWithFixedDelay(scheduler::run, 0, period, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    /**
+     * Schedules the next execution of a standing order, replaces the already scheduled one
+     *
+     * @param order standing order
+     */
+    public synchronized void schedule(StandingOrder order) {
+        cancel(order.id());
+        if (order.isFinished()) return;
+        long deadline = tick(order.next());
+        if (deadline <= wheel.now()) due.add(order);
+        else timers.put(order.id(), wheel.schedule(deadline, order));
+    }
+
+    /**
+     * Removes a standing order from the schedule
+     *
+     * @param orderID standing order id
+     */
+    public synchronized void cancel(UUID orderID) {
+        TimingWheel.Timer<StandingOrder> timer = timers.remove(orderID);
+        if (timer != null) wheel.cancel(timer);
+        else due.removeIf(order -> order.id().equals(orderID));
+    }
+
+    /**
+     * @return how many standing orders are waiting, due ones included
+     */
+    public synchronized int size() {
+        return wheel.size() + due.size();
+    }
+
+    /**
+     * Stops executing the standing orders, the running batch is finished
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d scheduled, %d due, %d executed, %d skipped, %d cancelled", wheel.size(), due.size(),
+                completed.sum(), skipped.sum(), cancelled.sum());
+    }
+
+    private void run() {
+        try {
+            execute(takeDue());
+        } catch (RuntimeException e) {
+            // An exception would stop the scheduled executor
+            Utils.printDebugMessage("Standing orders failed: " + e);
+        }
+    }
+
+    /**
+     * @return the due orders to be executed by this tick
+     */
+    private synchronized List<StandingOrder> takeDue() {
+        wheel.advance(tick(), order -> {
+            timers.remove(order.id());
+            due.add(order);
+        });
+        List<StandingOrder> batch = new ArrayList<>(Math.min(due.size(), Configuration.STANDING_ORDER_BATCH_SIZE));
+        while (!due.isEmpty() && batch.size() < Configuration.STANDING_ORDER_BATCH_SIZE) batch.add(due.poll());
+        if (!due.isEmpty()) Utils.printDebugMessage(String.format("Standing orders catching up, %d left", due.size()));
+        return batch;
+    }
+
+    private void execute(List<StandingOrder> batch) {
+        Set<Account> changed = new LinkedHashSet<>();
+        for (StandingOrder order : batch) {
+            try {
+                execute(order, changed);
+            } catch (RuntimeException e) {
+                // The rest of the batch is executed, the failed order is retried by the next tick
+                Utils.printDebugMessage(String.format("Standing order %s failed: %s", order.id(), e));
+                retry(order);
+            }
+        }
+        changed.forEach(Account::save);
+    }
+
+    /**
+     * Executes a single due order
+     *
+     * @param order   standing order
+     * @param changed accounts changed by the batch
+     */
+    private void execute(StandingOrder order, Set<Account> changed) {
+        Optional<Account> sender = Bank.accounts.getByID(order.sender());
+        if (sender.isEmpty()) {
+            cancelled.increment();
+            return;
+        }
+        Optional<Account> receiver = Bank.accounts.getByID(order.receiver());
+        Optional<User> user = Bank.users.getByID(order.user());
+        if (sender.get().isClosed() || receiver.isEmpty() || receiver.get().isClosed() || user.isEmpty()) {
+            sender.get().cancelStandingOrder(order.id());
+            changed.add(sender.get());
+            cancelled.increment();
+            return;
+        }
+
+        // Recorded before the payment - a crash in between loses the execution rather than repeating it
+        StandingOrder executed = order.executed();
+        if (!sender.get().updateStandingOrder(executed)) return;
+        changed.add(sender.get());
+        if (pay(order, sender.get(), receiver.get(), user.get())) {
+            completed.increment();
+            changed.add(receiver.get());
+        } else skipped.increment();
+        schedule(executed);
+    }
+
+    /**
+     * Puts a failed order back among the due ones, unless it has been scheduled again already. A retried execution
+     * can't be paid twice, its payment is keyed by the execution.
+     *
+     * @param order standing order
+     */
+    private synchronized void retry(StandingOrder order) {
+        if (!timers.containsKey(order.id()) && due.stream().noneMatch(other -> other.id().equals(order.id()))) due.add(order);
+    }
+
+    /**
+     * @return whether the payment went through
+     */
+    private boolean pay(StandingOrder order, Account sender, Account receiver, User user) {
+        try {
+            long amount = Balance.convert(order.amount(), order.currency(), sender.getCurrency());
+            // Keyed by the execution, so the same execution can't be paid twice
+            String key = String.format("standing-order/%s/%d", order.id(), order.executions());
+            TransferEngine.Result result = sender.submitPayment(amount, receiver, user, key).join().result();
+            if (result != TransferEngine.Result.COMPLETED)
+                Utils.printDebugMessage(String.format("Standing order %s skipped: %s", order.id(), result));
+            return result == TransferEngine.Result.COMPLETED;
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            Utils.printDebugMessage(String.format("Standing order %s skipped: %s", order.id(), cause));
+            return false;
+        }
+    }
+
+    private long tick() {
+        return Math.floorDiv(System.currentTimeMillis() / 1000, tickSeconds);
+    }
+
+    /**
+     * @return the first tick at or after the given time
+     */
+    private long tick(LocalDateTime time) {
+        return -Math.floorDiv(-Utils.toEpoch(time), tickSeconds);
+    }
+}
@@ -1,10 +1,14 @@
 package bohac.transaction;
 
+import bohac.Configuration;
+import bohac.entity.account.Money;
+import bohac.storage.JSONPullParser;
 import bohac.storage.JSONSerializable;
 import bohac.util.Utils;
 import bohac.entity.account.Account;
 import org.json.JSONObject;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Comparator;
@@ -16,7 +20,7 @@ import java.util.UUID;
  * A transaction of some amount of money, incoming or outgoing.
  */
 public interface Transaction extends Comparable<Transaction>, JSONSerializable {
-    Comparator<Transaction> AMOUNT = Comparator.comparing(Transaction::getAmount).reversed();
+    Comparator<Transaction> AMOUNT = (a, b) -> Money.compare(b.getAmount(), a.getAmount());
     Comparator<Transaction> CHRONOLOGICAL = Comparator.comparing(Transaction::getDateTime).reversed();
 
     /**
@@ -26,20 +30,31 @@ public interface Transaction extends Comparable<Transaction>, JSONSerializable {
         INCOMING, OUTGOING
     }
 
+    /**
+     * @return id of the transfer, shared by its incoming and outgoing leg, see {@link TransactionId}. Null for the
+     * transactions recorded before the transfers had ids.
+     */
+    UUID getId();
+
     /**
      * @return the target account associated with this transaction, for an incoming transaction, the target would be the sender account, vice versa
      */
     Account getTarget();
 
+    /**
+     * @return the id of the target account, see {@link #getTarget()}
+     */
+    UUID getTargetId();
+
     /**
      * @return a {@link LocalDateTime} object representing the time this transaction took place
      */
     LocalDateTime getDateTime();
 
     /**
-     * @return the amount of money that's being transferred
+     * @return the amount of money that's being transferred, in the minor units of the currency
      */
-    float getAmount();
+    long getAmount();
 
     /**
      * @return the currency that was used for this transaction
@@ -65,24 +80,61 @@ public interface Transaction extends Comparable<Transaction>, JSONSerializable {
     static Transaction load(JSONObject object) {
         Type type = Type.valueOf(object.getString("type"));
         LocalDateTime date_time = Utils.parseEpoch(object.getLong("date_time"));
-        float amount = object.getFloat("amount");
+        Currency currency = Currency.getInstance(object.getString("currency"));
+        long amount = Money.of(object.getBigDecimal("amount"), currency, Configuration.MONEY_ROUNDING);
+        UUID id = object.has("id") ? UUID.fromString(object.getString("id")) : null;
         if (type == Type.INCOMING) {
-            return new IncomingTransaction(UUID.fromString(object.getString("target")),
-                    date_time, amount, Currency.getInstance(object.getString("currency")));
+            return new IncomingTransaction(id, UUID.fromString(object.getString("target")),
+                    date_time, amount, currency);
         } else if (type == Type.OUTGOING) {
-            return new OutgoingTransaction(
+            return new OutgoingTransaction(id,
                     UUID.fromString(object.getString("user")),
                     UUID.fromString(object.getString("target")),
-                    date_time, amount, Currency.getInstance(object.getString("currency"))
+                    date_time, amount, currency
             );
         } else return null;
     }
 
+    /**
+     * Loads a {@code Transaction} object straight from a JSON stream
+     *
+     * @param parser parser positioned at the start of the transaction object
+     * @return the {@link Transaction} object
+     */
+    static Transaction load(JSONPullParser parser) {
+        Type type = null;
+        UUID id = null, target = null, user = null;
+        long dateTime = 0;
+        BigDecimal amount = BigDecimal.ZERO;
+        Currency currency = null;
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "id" -> id = parser.nextUUID();
+                case "type" -> type = Type.valueOf(parser.nextString());
+                case "target" -> target = parser.nextUUID();
+                case "user" -> user = parser.nextUUID();
+                case "date_time" -> dateTime = parser.nextLong();
+                case "amount" -> amount = parser.nextDecimal();
+                case "currency" -> currency = Currency.getInstance(parser.nextString());
+                default -> parser.skipValue();
+            }
+        }
+        parser.endObject();
+        long minor = Money.of(amount, currency, Configuration.MONEY_ROUNDING);
+        if (type == Type.INCOMING) {
+            return new IncomingTransaction(id, target, Utils.parseEpoch(dateTime), minor, currency);
+        } else if (type == Type.OUTGOING) {
+            return new OutgoingTransaction(id, user, target, Utils.parseEpoch(dateTime), minor, currency);
+        } else return null;
+    }
+
     @Override
     default JSONObject toJSON() {
         return new JSONObject()
-                .put("target", getTarget().getId())
-                .put("amount", getAmount())
+                .put("id", getId())
+                .put("target", getTargetId())
+                .put("amount", Money.toDecimal(getAmount(), getCurrency()))
                 .put("currency", getCurrency())
                 .put("date_time", Utils.toEpoch(getDateTime()));
     }
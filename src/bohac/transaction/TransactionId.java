@@ -0,0 +1,46 @@
+package bohac.transaction;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the ids of the transfers, both legs of a transfer share the id. The ids are version 7 {@link UUID}s - the
+ * highest 48 bits are the milliseconds since the epoch, followed by a 12 bit counter and random bits. The ids of this
+ * process are strictly increasing in the order of {@link UUID#compareTo(UUID)}, even when the clock goes back or more
+ * than 4096 of them are generated in a single millisecond.
+ * <p>
+ * The random bits are not cryptographically strong, the ids are not meant to be secrets.
+ */
+public final class TransactionId {
+    /**
+     * The milliseconds and the counter of the last generated id, 60 bits
+     */
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private TransactionId() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @return new transfer id
+     */
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        long state = LAST.accumulateAndGet(now, (last, time) -> Math.max(last + 1, time));
+        long mostSignificant = ((state >>> 12) << 16) | 0x7000L | (state & 0xFFF);
+        long leastSignificant = (ThreadLocalRandom.current().nextLong() >>> 2) | 0x8000000000000000L;
+        return new UUID(mostSignificant, leastSignificant);
+    }
+
+    /**
+     * @param id transfer id
+     * @return the time the id was generated at, to the millisecond
+     */
+    public static LocalDateTime timestamp(UUID id) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(id.getMostSignificantBits() >>> 16), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,68 @@
+package bohac.transaction;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * A page of a transaction history, see {@link bohac.entity.account.Account#getTransactionHistory(java.util.Comparator, int, String)}.
+ * The cursors are opaque to the callers. They point at a position in the history, which is append only, so a cursor
+ * stays valid - and the pages don't repeat or skip a transaction - while new transactions are posted.
+ *
+ * @param transactions transactions of the page, in the order of the query
+ * @param next         cursor of the next page, null if this is the last one
+ */
+public record TransactionPage(List<Transaction> transactions, String next) {
+    /**
+     * Order a cursor belongs to
+     */
+    enum Kind {
+        CHRONOLOGICAL, AMOUNT
+    }
+
+    /**
+     * Pages through a history in the {@link Transaction#CHRONOLOGICAL} order. The history is kept in the order the
+     * transactions were posted in, so it's read backwards from the end.
+     *
+     * @param history  transaction history
+     * @param pageSize how many transactions per page
+     * @param cursor   cursor of the page, null for the first one
+     * @return the page
+     */
+    public static TransactionPage chronological(List<Transaction> history, int pageSize, String cursor) {
+        checkPageSize(pageSize);
+        int start = cursor == null ? history.size() - 1 : decode(cursor, Kind.CHRONOLOGICAL).getInt();
+        if (start >= history.size()) throw new IllegalArgumentException("Invalid cursor");
+        int end = Math.max(start - pageSize, -1);
+        List<Transaction> transactions = new ArrayList<>(start - end);
+        for (int i = start; i > end; i--) transactions.add(history.get(i));
+        return new TransactionPage(transactions, end >= 0 ? encode(Kind.CHRONOLOGICAL, end, 0) : null);
+    }
+
+    static void checkPageSize(int pageSize) {
+        if (pageSize <= 0) throw new IllegalArgumentException("The page size has to be positive");
+    }
+
+    static String encode(Kind kind, int position, long amount) {
+        ByteBuffer buffer = ByteBuffer.allocate(kind == Kind.AMOUNT ? 13 : 5).put((byte) kind.ordinal()).putInt(position);
+        if (kind == Kind.AMOUNT) buffer.putLong(amount);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @return buffer positioned after the kind of the cursor
+     * @throws IllegalArgumentException if it's not a cursor of the given order
+     */
+    static ByteBuffer decode(String cursor, Kind kind) {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (buffer.remaining() != (kind == Kind.AMOUNT ? 13 : 5) || buffer.get() != kind.ordinal() || buffer.getInt(1) < 0)
+            throw new IllegalArgumentException("Invalid cursor");
+        return buffer;
+    }
+}
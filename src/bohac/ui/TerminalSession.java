@@ -8,9 +8,14 @@ import bohac.auditlog.events.AccessAuditEvent;
 import bohac.entity.User;
 import bohac.entity.account.Account;
 import bohac.entity.account.Balance;
+import bohac.entity.account.BalanceOrder;
+import bohac.entity.account.Money;
+import bohac.entity.account.TransferEngine;
 import bohac.transaction.Transaction;
+import bohac.transaction.TransactionPage;
 import bohac.util.Utils;
 
+import java.math.BigDecimal;
 import java.text.Collator;
 import java.time.Duration;
 import java.util.*;
@@ -56,7 +61,7 @@ public class TerminalSession implements Session {
                     // Accounts menu
                     new Menu(
                             new Menu.MenuItem("menu_select_account", () -> {
-                                chooseOne(user.getAccountsAvailable().stream().sorted().toArray(Account[]::new), Account::getDisplayName, account -> {
+                                chooseOne(BalanceOrder.sort(user.getAccountsAvailable()).toArray(Account[]::new), Account::getDisplayName, account -> {
                                     account.logAccess(user);
                                     // Account menu
                                     new Menu(
@@ -94,6 +99,7 @@ public class TerminalSession implements Session {
                 }),
                 new Menu.MenuItem("menu_show_users", this::handleViewUsers).setVisible(user.isAdmin()),
                 new Menu.MenuItem("menu_show_accounts", this::handleViewAccounts).setVisible(user.isAdmin()),
+                new Menu.MenuItem("menu_show_richest_accounts", this::handleViewRichestAccounts).setVisible(user.isAdmin()),
                 new Menu.MenuItem("menu_add_user", this::handleRegisterUser).setVisible(user.isAdmin()),
                 new Menu.MenuItem("menu_logout").exitMenuAfter(),
                 new Menu.MenuItem("menu_logout_exit", this::endSession).exitMenuAfter()
@@ -131,10 +137,14 @@ public class TerminalSession implements Session {
         // Generic user data
         String name = promptStringMandatory(LANGUAGE_MANAGER.getString("register_name"), LANGUAGE_MANAGER);
         String lastName = promptStringMandatory(LANGUAGE_MANAGER.getString("register_last_name"), LANGUAGE_MANAGER);
-        String username = promptStringMandatory(LANGUAGE_MANAGER.getString("register_username"), LANGUAGE_MANAGER);
-        String email = promptStringValidated(LANGUAGE_MANAGER.getString("register_email"),
+        String username;
+        while (Bank.users.getByLogin(username = promptStringMandatory(LANGUAGE_MANAGER.getString("register_username"), LANGUAGE_MANAGER)).isPresent())
+            System.out.println(LANGUAGE_MANAGER.getString("register_login_taken"));
+        String email;
+        while (Bank.users.getByLogin(email = promptStringValidated(LANGUAGE_MANAGER.getString("register_email"),
                 s -> Pattern.matches("^[a-zA-Z\\d_.+-]+@[a-zA-Z\\d-]+\\.[a-zA-Z\\d-.]+$", s),
-                () -> System.out.println(LANGUAGE_MANAGER.getString("register_email_invalid")));
+                () -> System.out.println(LANGUAGE_MANAGER.getString("register_email_invalid")))).isPresent())
+            System.out.println(LANGUAGE_MANAGER.getString("register_login_taken"));
 
         // Password
         boolean passwordValid;
@@ -263,10 +273,28 @@ public class TerminalSession implements Session {
      * @param orderLabel order label
      */
     private void handleViewTransactionHistory(Account account, Comparator<Transaction> order, String orderLabel) {
-        showSet(account.getTransactionHistory(),
-                null,
-                order,
-                orderLabel, "account_showing_transactions");
+        AtomicBoolean nextPage = new AtomicBoolean();
+        String cursor = null;
+        int shown = 0;
+        do {
+            TransactionPage page = account.getTransactionHistory(order, Configuration.TRANSACTION_PAGE_SIZE, cursor);
+            System.out.println(LANGUAGE_MANAGER.getString("account_showing_transactions_page", Map.of(
+                    "from", page.transactions().isEmpty() ? 0 : shown + 1,
+                    "to", shown + page.transactions().size(),
+                    "count", account.getTransactionHistory().size(),
+                    "order", LANGUAGE_MANAGER.getString(orderLabel)
+            )));
+            System.out.println();
+            page.transactions().forEach(System.out::println);
+            shown += page.transactions().size();
+            cursor = page.next();
+
+            nextPage.set(false);
+            new Menu(
+                    new Menu.MenuItem("menu_next_page", () -> nextPage.set(true)).exitMenuAfter().setVisible(cursor != null),
+                    Menu.getBackItem()
+            ).dontClear().prompt();
+        } while (nextPage.get());
     }
 
     /**
@@ -295,12 +323,20 @@ public class TerminalSession implements Session {
      * View accounts handler
      */
     private void handleViewAccounts() {
-        showSet(Bank.accounts.all(),
+        showOrdered(BalanceOrder.sort(Bank.accounts.all()),
                 account -> account.getDisplayName() + (account.isClosed() ? " [%s]".formatted(LANGUAGE_MANAGER.getString("closed")) : ""),
-                null,
                 "order4", "showing_accounts");
     }
 
+    /**
+     * View richest accounts handler
+     */
+    private void handleViewRichestAccounts() {
+        showOrdered(BalanceOrder.top(Bank.accounts.all(), Configuration.RICHEST_ACCOUNTS),
+                account -> account.getDisplayName() + (account.isClosed() ? " [%s]".formatted(LANGUAGE_MANAGER.getString("closed")) : ""),
+                "order4", "showing_richest_accounts");
+    }
+
     /**
      * Account name change handler
      *
@@ -365,7 +401,8 @@ public class TerminalSession implements Session {
 
                 chooseOne(potentialAccounts, null, receiverAccount -> {
                     clear();
-                    float amount = (float) promptNumericDouble(LANGUAGE_MANAGER.getString("amount") + ": ", LANGUAGE_MANAGER);
+                    long amount = Money.of(BigDecimal.valueOf(promptNumericDouble(LANGUAGE_MANAGER.getString("amount") + ": ", LANGUAGE_MANAGER)),
+                            account.getCurrency(), Configuration.MONEY_ROUNDING);
                     clear();
                     System.out.println(LANGUAGE_MANAGER.getString("account_transaction_confirmation", Map.of(
                             "amount", new Balance(account.getCurrency(), amount),
@@ -373,13 +410,15 @@ public class TerminalSession implements Session {
                     )));
                     new Menu(
                             new Menu.MenuItem("menu_authorize_transaction", () -> {
-                                // Was the payment successful?
-                                if (!account.authorizePayment(amount, receiverAccount, user)) {
-                                    message.set(LANGUAGE_MANAGER.getString("account_insufficient_funds"));
-                                } else {
-                                    message.set(LANGUAGE_MANAGER.getString("account_transaction_successful"));
-                                    receiverAccount.save();
-                                }
+                                TransferEngine.Result result = account.authorizePayment(amount, receiverAccount, user);
+                                message.set(LANGUAGE_MANAGER.getString(switch (result) {
+                                    case COMPLETED -> "account_transaction_successful";
+                                    case INSUFFICIENT_FUNDS -> "account_insufficient_funds";
+                                    case SAME_ACCOUNT -> "account_transaction_same_account";
+                                    case INVALID_AMOUNT -> "account_transaction_invalid_amount";
+                                    case KEY_REUSED -> "account_transaction_key_reused";
+                                }));
+                                if (result == TransferEngine.Result.COMPLETED) receiverAccount.save();
                             }).exitMenuAfter(),
                             Menu.getBackItem()
                     ).dontClear().prompt();
@@ -387,6 +426,8 @@ public class TerminalSession implements Session {
             }
         } while (potentialAccounts.length == 0);
         account.save();
+        // The payment has to be on the disk before the user is told it went through
+        if (Bank.persistence != null) Bank.persistence.barrier();
         return new Menu.MenuItem.Result(false, message.get());
     }
 
@@ -396,7 +437,7 @@ public class TerminalSession implements Session {
      * @param user logged-in user
      */
     private void accountsMenuBeforeEach(User user) {
-        List<Account> accounts = user.getAccountsAvailable().stream().sorted().toList();
+        List<Account> accounts = BalanceOrder.sort(user.getAccountsAvailable());
         System.out.println(
                 center(TerminalUtils.getAccountsOverview(accounts), printHeaderAndGetWidth(LANGUAGE_MANAGER.getString("menu_header_accounts")))
         );
@@ -418,7 +459,7 @@ public class TerminalSession implements Session {
                         account.getOwners().size()),
                 printHeaderAndGetWidth(account.getName(false)));
         System.out.println(balanceAndOwnerCount);
-        AccessAuditEvent lastAccess = account.getAuditLog().getLastAccess();
+        AccessAuditEvent lastAccess = account.getLastAccess();
         System.out.println(center(String
                         .format(LANGUAGE_MANAGER.getString("last_access")
                                 + ": %s", lastAccess == null ? LANGUAGE_MANAGER.getString("account_last_access_empty") : lastAccess.toStringShort()),
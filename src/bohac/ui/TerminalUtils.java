@@ -252,14 +252,29 @@ public class TerminalUtils {
                                                          Function<T, String> displayNameDescriptor,
                                                          Comparator<T> order,
                                                          String orderLabel, String message) {
+        if (order == null) Collections.sort(dataSet);
+        else dataSet.sort(order);
+        showOrdered(dataSet, displayNameDescriptor, orderLabel, message);
+    }
+
+    /**
+     * Displays a set of objects in the order they are given. All messages are passed in as a language key and later resolved by the {@link LanguageManager}
+     *
+     * @param dataSet               data, already ordered
+     * @param displayNameDescriptor defines what each record will display as
+     * @param orderLabel            order label
+     * @param message               message (i.e Showing n objects (order))
+     * @param <T>                   type
+     */
+    public static <T> void showOrdered(List<T> dataSet,
+                                       Function<T, String> displayNameDescriptor,
+                                       String orderLabel, String message) {
         System.out.println(LANGUAGE_MANAGER.getString(message,
                 Map.of(
                         "count", dataSet.size(),
                         "order", LANGUAGE_MANAGER.getString(orderLabel)
                 )));
         System.out.println();
-        if (order == null) Collections.sort(dataSet);
-        else dataSet.sort(order);
         dataSet.forEach(data -> System.out.println(displayNameDescriptor == null ? data : displayNameDescriptor.apply(data)));
         Menu.BACK_ONLY.prompt();
     }
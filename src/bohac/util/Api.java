@@ -15,9 +15,19 @@ import java.net.URL;
  */
 public class Api {
     private final String baseURL;
+    private final int timeout;
 
     public Api(String baseURL) {
+        this(baseURL, 0);
+    }
+
+    /**
+     * @param baseURL base URL of the endpoints
+     * @param timeout connection and read timeout of the requests in millis, 0 to wait forever
+     */
+    public Api(String baseURL, int timeout) {
         this.baseURL = baseURL;
+        this.timeout = timeout;
     }
 
     /**
@@ -31,6 +41,8 @@ public class Api {
             HttpURLConnection connection = (HttpURLConnection) new URL(baseURL + endpoint).openConnection();
 
             connection.setRequestProperty("accept", "application/json");
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
 
             return connection.getInputStream();
         } catch (IOException e) {
@@ -0,0 +1,128 @@
+package bohac.util;
+
+/**
+ * Bounded Levenshtein distance of pre-normalized strings (see {@link Utils#normalize(String)}). The callers only ever
+ * need to know whether the distance is within some bound, so the computation stops as soon as it can't be.
+ * <ul>
+ *     <li>If the shorter string fits into 64 characters, Myers' bit-parallel algorithm is used - a whole column of the
+ *     dynamic programming matrix is computed in a few long operations</li>
+ *     <li>Longer strings fall back to the dynamic programming limited to the diagonal band of the bound</li>
+ * </ul>
+ * The working memory is kept per thread and reused, so no allocation happens per call.
+ */
+final class EditDistance {
+    private static final ThreadLocal<EditDistance> SCRATCH = ThreadLocal.withInitial(EditDistance::new);
+
+    /**
+     * Myers' match masks of the Latin-1 characters
+     */
+    private final long[] peq = new long[256];
+    /**
+     * Match masks of the other characters of the pattern, looked up linearly - there are hardly ever any
+     */
+    private final char[] otherChars = new char[64];
+    private final long[] otherMasks = new long[64];
+    private int others;
+    /**
+     * Two rows of the banded dynamic programming
+     */
+    private int[] previous = new int[0], current = new int[0];
+
+    private EditDistance() {
+    }
+
+    /**
+     * @param a   first string
+     * @param b   second string
+     * @param max the bound
+     * @return the edit distance of the strings, if it's at most {@code max}, {@code max + 1} otherwise
+     */
+    static int bounded(char[] a, char[] b, int max) {
+        char[] pattern = a.length <= b.length ? a : b;
+        char[] text = pattern == a ? b : a;
+        max = Math.min(max, text.length);
+        if (text.length - pattern.length > max) return max + 1;
+        if (pattern.length == 0) return text.length;
+        EditDistance scratch = SCRATCH.get();
+        return pattern.length <= 64 ? scratch.myers(pattern, text, max) : scratch.banded(pattern, text, max);
+    }
+
+    private int myers(char[] pattern, char[] text, int max) {
+        int m = pattern.length, n = text.length;
+        for (int i = 0; i < m; i++) {
+            char c = pattern[i];
+            if (c < 256) {
+                peq[c] |= 1L << i;
+                continue;
+            }
+            int k = 0;
+            while (k < others && otherChars[k] != c) k++;
+            if (k == others) {
+                otherChars[others] = c;
+                otherMasks[others++] = 0;
+            }
+            otherMasks[k] |= 1L << i;
+        }
+
+        long pv = -1L, mv = 0, high = 1L << (m - 1);
+        int score = m;
+        for (int j = 0; j < n; j++) {
+            long eq = mask(text[j]);
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & high) != 0) score++;
+            else if ((mh & high) != 0) score--;
+            // The first row of the matrix grows by one in every column
+            ph = (ph << 1) | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            // Every remaining column can lower the score by one at most
+            if (score - (n - j - 1) > max) {
+                score = max + 1;
+                break;
+            }
+        }
+
+        for (char c : pattern) if (c < 256) peq[c] = 0;
+        others = 0;
+        return Math.min(score, max + 1);
+    }
+
+    private long mask(char c) {
+        if (c < 256) return peq[c];
+        for (int k = 0; k < others; k++) if (otherChars[k] == c) return otherMasks[k];
+        return 0;
+    }
+
+    private int banded(char[] b, char[] a, int max) {
+        int n = a.length, m = b.length, infinity = max + 1;
+        if (previous.length < m + 1) {
+            previous = new int[m + 1];
+            current = new int[m + 1];
+        }
+        int[] previous = this.previous, current = this.current;
+        for (int j = 0; j <= Math.min(m, max); j++) previous[j] = j;
+        if (max + 1 <= m) previous[max + 1] = infinity;
+
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - max), to = Math.min(m, i + max);
+            current[from - 1] = from == 1 ? Math.min(i, infinity) : infinity;
+            int rowMin = current[from - 1];
+            for (int j = from; j <= to; j++) {
+                int value = previous[j - 1] + (a[i - 1] == b[j - 1] ? 0 : 1);
+                value = Math.min(value, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(value, infinity);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to + 1 <= m) current[to + 1] = infinity;
+            if (rowMin > max) return infinity;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[m], infinity);
+    }
+}
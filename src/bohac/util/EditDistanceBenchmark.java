@@ -0,0 +1,109 @@
+package bohac.util;
+
+import java.util.Random;
+
+/**
+ * Command line tool, compares the original similarity check ({@link Utils#similarity(String, String)} with the full
+ * {@link Utils#editDistance(String, String)}) against {@link Utils#isSimilar(char[], char[], double)} on the
+ * pre-normalized names, for several name length distributions. Before measuring, both are checked to give the same
+ * answers and the bounded distance is checked against the full one.
+ * <p>
+ * Usage: {@code EditDistanceBenchmark [comparisons]}, the default is 1 000 000
+ */
+public class EditDistanceBenchmark {
+    private static final double THRESHOLD = 0.4;
+    private static final String[] SYLLABLES = {"ja", "no", "va", "kla", "ra", "se", "pe", "tr", "ho", "lu", "ch", "mi",
+            "\u0159", "ov\u00e1", "ek", "st", "di", "be", "zu", "ka"};
+
+    private EditDistanceBenchmark() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) {
+        int comparisons = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-12s %14s %14s %9s %10s%n", "lengths", "original", "bounded", "speedup", "similar");
+        measure("4-12", 4, 12, comparisons);
+        measure("13-32", 13, 32, comparisons);
+        measure("33-64", 33, 64, comparisons);
+        measure("65-200", 65, 200, comparisons / 10);
+    }
+
+    /**
+     * Measures the comparisons of random names of the given lengths, half of the pairs are a name and its
+     * slightly changed copy, the other half are two unrelated names
+     */
+    private static void measure(String label, int minLength, int maxLength, int comparisons) {
+        Random random = new Random(42);
+        int pairs = 1000;
+        String[] left = new String[pairs], right = new String[pairs];
+        char[][] leftNormalized = new char[pairs][], rightNormalized = new char[pairs][];
+        for (int i = 0; i < pairs; i++) {
+            left[i] = name(random, minLength, maxLength);
+            right[i] = i % 2 == 0 ? mutate(random, left[i]) : name(random, minLength, maxLength);
+            leftNormalized[i] = Utils.normalize(left[i]);
+            rightNormalized[i] = Utils.normalize(right[i]);
+        }
+
+        int similar = 0;
+        for (int i = 0; i < pairs; i++) {
+            boolean expected = Utils.similarity(left[i], right[i]) > THRESHOLD;
+            if (Utils.isSimilar(leftNormalized[i], rightNormalized[i], THRESHOLD) != expected)
+                throw new AssertionError(String.format("Similarity mismatch: %s, %s", left[i], right[i]));
+            int distance = Utils.editDistance(left[i], right[i]);
+            for (int max = 0; max <= distance + 1; max++) {
+                int bounded = Utils.boundedEditDistance(leftNormalized[i], rightNormalized[i], max);
+                if (bounded != Math.min(distance, max + 1))
+                    throw new AssertionError(String.format("Distance mismatch: %s, %s, bound %d", left[i], right[i], max));
+            }
+            if (expected) similar++;
+        }
+
+        // Warm-up
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < Math.min(comparisons, 100_000); i++) {
+                Utils.similarity(left[i % pairs], right[i % pairs]);
+                Utils.isSimilar(leftNormalized[i % pairs], rightNormalized[i % pairs], THRESHOLD);
+            }
+        }
+
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < comparisons; i++) if (Utils.similarity(left[i % pairs], right[i % pairs]) > THRESHOLD) found++;
+        double original = (double) (System.nanoTime() - start) / comparisons;
+        start = System.nanoTime();
+        for (int i = 0; i < comparisons; i++) if (Utils.isSimilar(leftNormalized[i % pairs], rightNormalized[i % pairs], THRESHOLD)) found--;
+        double bounded = (double) (System.nanoTime() - start) / comparisons;
+        if (found != 0) throw new AssertionError();
+
+        System.out.printf("%-12s %11.1f ns %11.1f ns %8.1fx %9.1f%%%n", label, original, bounded, original / bounded,
+                similar * 100.0 / pairs);
+    }
+
+    private static String name(Random random, int minLength, int maxLength) {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder name = new StringBuilder();
+        while (name.length() < length) {
+            if (name.length() > 0 && random.nextInt(6) == 0) name.append(' ');
+            String syllable = SYLLABLES[random.nextInt(SYLLABLES.length)];
+            name.append(name.length() == 0 ? Character.toUpperCase(syllable.charAt(0)) + syllable.substring(1) : syllable);
+        }
+        return name.substring(0, length);
+    }
+
+    /**
+     * @return a copy of the name with a few typos
+     */
+    private static String mutate(Random random, String name) {
+        StringBuilder mutated = new StringBuilder(name);
+        int typos = 1 + random.nextInt(Math.max(1, name.length() / 4));
+        for (int i = 0; i < typos && mutated.length() > 1; i++) {
+            int position = random.nextInt(mutated.length());
+            switch (random.nextInt(3)) {
+                case 0 -> mutated.deleteCharAt(position);
+                case 1 -> mutated.insert(position, (char) ('a' + random.nextInt(26)));
+                default -> mutated.setCharAt(position, (char) ('a' + random.nextInt(26)));
+            }
+        }
+        return random.nextBoolean() ? mutated.toString().toUpperCase() : mutated.toString();
+    }
+}
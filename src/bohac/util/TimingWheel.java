@@ -0,0 +1,215 @@
+package bohac.util;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel - schedules values to ticks (any unit of time) with constant time insertion, cancellation
+ * and expiry, no matter how many values are scheduled.
+ * <p>
+ * Every level has 64 slots, a slot on level {@code n} spans {@code 64^n} ticks. A value is put on the lowest level
+ * whose span reaches from the current tick to its deadline. Whenever the current tick crosses a slot boundary of a
+ * higher level, the values of that slot are moved down a level, until they reach the level 0 and expire. A bitmap of
+ * the occupied slots per level lets {@link #advance(long, Consumer)} jump straight to the next occupied slot, so
+ * catching up a long time doesn't cost a step per tick.
+ * <p>
+ * Not thread-safe.
+ *
+ * @param <T> scheduled values
+ */
+public final class TimingWheel<T> {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 6;
+    /**
+     * The farthest deadline that can be scheduled, relative to the current tick
+     */
+    private static final long HORIZON = (1L << (BITS * LEVELS)) - 1;
+
+    /**
+     * A scheduled value, an intrusive node of the doubly linked list of its slot
+     *
+     * @param <T> value
+     */
+    public static final class Timer<T> {
+        private final T value;
+        private final long deadline;
+        private Timer<T> previous, next;
+        private int level = -1, slot;
+
+        private Timer(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        public T value() {
+            return value;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        /**
+         * @return whether the timer is still scheduled
+         */
+        public boolean isScheduled() {
+            return level >= 0;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Timer<T>[][] slots = new Timer[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private long current;
+    private int size;
+
+    /**
+     * @param now the current tick
+     */
+    public TimingWheel(long now) {
+        this.current = now;
+    }
+
+    /**
+     * Schedules a value. A deadline in the past expires with the next {@link #advance(long, Consumer)}, a deadline
+     * too far in the future is moved to the farthest one possible and rescheduled from there.
+     *
+     * @param deadline tick the value expires at
+     * @param value    value
+     * @return the timer, for a cancellation
+     */
+    public Timer<T> schedule(long deadline, T value) {
+        Timer<T> timer = new Timer<>(value, deadline);
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * @param timer timer
+     * @return false if the timer has expired or has been cancelled already
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (!timer.isScheduled()) return false;
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the current tick forward, expiring all the values due until then in the order of their deadlines
+     *
+     * @param now    the new current tick
+     * @param expire called with every expired value
+     * @return how many values expired
+     */
+    public int advance(long now, Consumer<T> expire) {
+        int expired = fire(expire);
+        while (current < now && size > 0) {
+            current = Math.min(next(), now);
+            if ((current & (SLOTS - 1)) == 0) cascade();
+            expired += fire(expire);
+        }
+        if (current < now) current = now;
+        return expired;
+    }
+
+    /**
+     * @return the start of the next occupied slot, on the lowest level that has one left in its current rotation
+     */
+    private long next() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            int digit = (int) ((current >>> shift) & (SLOTS - 1));
+            long later = digit == SLOTS - 1 ? 0 : occupied[level] & (-1L << (digit + 1));
+            if (later != 0) return ((current >>> (shift + BITS)) << (shift + BITS)) + ((long) Long.numberOfTrailingZeros(later) << shift);
+        }
+        return ((current >>> (BITS * LEVELS)) + 1) << (BITS * LEVELS);
+    }
+
+    /**
+     * @return how many values are scheduled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the current tick
+     */
+    public long now() {
+        return current;
+    }
+
+    /**
+     * Moves down the values of the higher level slots whose span starts at the current tick
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int slot = (int) ((current >>> (BITS * level)) & (SLOTS - 1));
+            Timer<T> timer = slots[level][slot];
+            slots[level][slot] = null;
+            occupied[level] &= ~(1L << slot);
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                insert(timer);
+                timer = next;
+            }
+            // The slots of the higher levels only start at the boundaries of this one
+            if (slot != 0) return;
+        }
+    }
+
+    /**
+     * Expires the values in the level 0 slot of the current tick
+     */
+    private int fire(Consumer<T> expire) {
+        int slot = (int) (current & (SLOTS - 1));
+        Timer<T> timer = slots[0][slot];
+        if (timer == null) return 0;
+        slots[0][slot] = null;
+        occupied[0] &= ~(1L << slot);
+        int expired = 0;
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            if (timer.deadline > current) {
+                // Scheduled beyond the horizon, it's got only this far
+                insert(timer);
+            } else {
+                timer.previous = timer.next = null;
+                timer.level = -1;
+                size--;
+                expired++;
+                expire.accept(timer.value);
+            }
+            timer = next;
+        }
+        return expired;
+    }
+
+    private void insert(Timer<T> timer) {
+        long deadline = Math.min(Math.max(timer.deadline, current), current + HORIZON);
+        // The highest 6-bit digit the deadline differs from the current tick in decides the level
+        long difference = deadline ^ current;
+        int level = difference == 0 ? 0 : (63 - Long.numberOfLeadingZeros(difference)) / BITS;
+        if (level >= LEVELS) level = LEVELS - 1;
+        int slot = (int) ((deadline >>> (BITS * level)) & (SLOTS - 1));
+
+        timer.level = level;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = slots[level][slot];
+        if (timer.next != null) timer.next.previous = timer;
+        slots[level][slot] = timer;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timer<T> timer) {
+        if (timer.previous != null) timer.previous.next = timer.next;
+        else slots[timer.level][timer.slot] = timer.next;
+        if (timer.next != null) timer.next.previous = timer.previous;
+        if (slots[timer.level][timer.slot] == null) occupied[timer.level] &= ~(1L << timer.slot);
+        timer.previous = timer.next = null;
+        timer.level = -1;
+    }
+}
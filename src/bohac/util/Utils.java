@@ -13,14 +13,25 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 public class Utils {
@@ -47,11 +58,108 @@ public class Utils {
      * @param consumer what to do with the array elements (objects)
      */
     public static void loadFile(File file, Consumer<JSONObject> consumer) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            JSONObject object = new JSONObject(new JSONTokener(reader));
+        JSONObject object = parseFile(file);
+        if (object == null) return;
+        try {
             consumer.accept(object);
+        } catch (JSONException | IllegalArgumentException e) {
+            printDebugMessage(String.format("Couldn't load file %s", file));
+        }
+    }
+
+    /**
+     * Reads and parses a JSON file (single JSON object)
+     *
+     * @param file parsed file
+     * @return the parsed object, or null if the file couldn't be read or parsed
+     */
+    public static JSONObject parseFile(File file) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            return new JSONObject(new JSONTokener(reader));
         } catch (IOException | JSONException e) {
             printDebugMessage(String.format("Couldn't load file %s", file));
+            return null;
+        }
+    }
+
+    /**
+     * Durably writes a file - the content is written to a temporary file first, forced to the disk and then moved over
+     * the original file, so a crash never leaves a half-written file behind
+     *
+     * @param path    file path
+     * @param content file content
+     */
+    public static void writeFile(Path path, String content) {
+        writeFile(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Does the same thing as {@link #writeFile(Path, String)}, but the content is already encoded
+     *
+     * @param path    file path
+     * @param content file content
+     */
+    public static void writeFile(Path path, byte[] content) {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Does the same thing as {@link #writeFile(Path, byte[])} for several files at once. All the temporary files are
+     * written before any of them is synced, and every folder is synced once after the moves, so a batch of files costs
+     * a single round of syncs instead of a sync per file.
+     *
+     * @param files content of the files by their path
+     */
+    public static void writeFiles(Map<Path, byte[]> files) {
+        Map<Path, Path> temporaries = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Path, byte[]> file : files.entrySet()) {
+                Path path = file.getKey();
+                Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+                Files.createDirectories(path.getParent());
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(file.getValue());
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }
+                temporaries.put(temporary, path);
+            }
+            for (Path temporary : temporaries.keySet()) {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            Set<Path> folders = new LinkedHashSet<>();
+            for (Map.Entry<Path, Path> move : temporaries.entrySet()) {
+                Files.move(move.getKey(), move.getValue(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                folders.add(move.getValue().getParent());
+            }
+            for (Path folder : folders) syncFolder(folder);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Makes the renames in a folder durable. Not every platform lets a folder be opened, there the rename is as durable
+     * as the file system makes it.
+     */
+    private static void syncFolder(Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            printDebugMessage(String.format("Couldn't sync folder %s: %s", folder, e.getMessage()));
         }
     }
 
@@ -111,6 +219,49 @@ public class Utils {
         return (longerLength - editDistance(longer, shorter)) / (double) longerLength;
     }
 
+    /**
+     * Prepares a string for the repeated similarity checks, so it's not lowercased and copied on every comparison
+     *
+     * @param s string
+     * @return characters of the lowercase string
+     */
+    public static char[] normalize(String s) {
+        return s.toLowerCase(Locale.ROOT).toCharArray();
+    }
+
+    /**
+     * Similarity check of normalized strings, gives the same answer as {@code similarity(s1, s2) > threshold}, but the
+     * edit distance is computed only as far as the threshold needs it
+     *
+     * @param s1        normalized string, see {@link #normalize(String)}
+     * @param s2        normalized string, see {@link #normalize(String)}
+     * @param threshold 0 to 1 similarity the strings have to exceed
+     * @return whether the strings are similar enough
+     */
+    public static boolean isSimilar(char[] s1, char[] s2, double threshold) {
+        int longerLength = Math.max(s1.length, s2.length);
+        if (longerLength == 0) return 1.0 > threshold;
+        // The largest distance still exceeding the threshold
+        int max = (int) (longerLength * (1 - threshold));
+        while (max >= 0 && (longerLength - max) / (double) longerLength <= threshold) max--;
+        if (max < 0 || Math.abs(s1.length - s2.length) > max) return false;
+        return boundedEditDistance(s1, s2, max) <= max;
+    }
+
+    /**
+     * Edit distance of normalized strings bounded by {@code max}, uses Myers' bit-parallel algorithm for strings up to
+     * 64 characters and the banded dynamic programming for the longer ones, gives up as soon as the bound can't be met
+     *
+     * @param s1  normalized string, see {@link #normalize(String)}
+     * @param s2  normalized string, see {@link #normalize(String)}
+     * @param max the bound
+     * @return the edit distance, if it's at most {@code max}, {@code max + 1} otherwise
+     */
+    public static int boundedEditDistance(char[] s1, char[] s2, int max) {
+        if (max < 0) throw new IllegalArgumentException("Negative bound");
+        return EditDistance.bounded(s1, s2, max);
+    }
+
     /**
      * Returns the string metric for measuring difference between two sequences
      *